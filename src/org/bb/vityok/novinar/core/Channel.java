@@ -2,9 +2,19 @@ package org.bb.vityok.novinar.core;
 
 import java.io.Serializable;
 
+import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.format.DateTimeParseException;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 
@@ -26,6 +36,37 @@ public class Channel
     private String description;
     private Instant latestUpdate;  // last time the channel has been updated
     private String problems;
+    // HTTP cache validators for the conditional GET requests
+    private String etag;
+    private String lastModified;
+    // how many times the server replied with "304 Not Modified"
+    private final AtomicInteger notModifiedCount = new AtomicInteger(0);
+    // failure backoff state
+    private int failureCount = 0;
+    private Instant retryAt = null;
+    private boolean circuitOpen = false;
+    // refresh hints published with the feed and in the HTTP headers
+    private Duration publisherInterval = null;
+    private Duration cacheLifetime = null;
+    private Set<Integer> skipHours = Collections.emptySet();
+    private Set<DayOfWeek> skipDays = Collections.emptySet();
+    private final AtomicInteger skippedByHints = new AtomicInteger(0);
+    // newest item of the feed processed last time
+    private String watermarkLink;
+    private Instant watermarkDate;
+    // name of the feed format detected on the previous downloads
+    private volatile String feedFormat;
+    // number of the timestamp format that parsed the item dates
+    private volatile int timestampFormat = -1;
+    // learned refresh interval for the ADAPTIVE update period
+    private Duration adaptiveInterval;
+    // feed download traffic: as received over the wire and decoded
+    private final AtomicLong compressedBytes = new AtomicLong(0);
+    private final AtomicLong uncompressedBytes = new AtomicLong(0);
+    // outcome of storing the items of the feed
+    private final AtomicLong insertedItems = new AtomicLong(0);
+    private final AtomicLong updatedItems = new AtomicLong(0);
+    private final AtomicLong unchangedItems = new AtomicLong(0);
     // utilize JavaFX beans extensions to avoid messing with the 
     // property change listeners
     private BooleanProperty propHasProblems = new SimpleBooleanProperty(false);
@@ -67,6 +108,57 @@ public class Channel
             // couldn't parse it from the XML
             latestUpdate = Instant.EPOCH;
         }
+
+        etag = OPMLManager.getAttributeNS(ol.getNode(),
+                                          OPMLManager.NOVINAR_NS,
+                                          OPMLManager.A_ETAG,
+                                          null);
+        lastModified = OPMLManager.getAttributeNS(ol.getNode(),
+                                                  OPMLManager.NOVINAR_NS,
+                                                  OPMLManager.A_LAST_MODIFIED,
+                                                  null);
+        String intervalStr = OPMLManager.getAttributeNS(ol.getNode(),
+                                                        OPMLManager.NOVINAR_NS,
+                                                        OPMLManager.A_ADAPTIVE_INTERVAL,
+                                                        null);
+        adaptiveInterval = null;
+        if (intervalStr != null) {
+            try {
+                adaptiveInterval = Duration.parse(intervalStr);
+            } catch (DateTimeParseException pe) {
+                Novinar.getLogger().severe("failed to parse Channel " + getTitle()
+                                           + " adaptive interval: " + intervalStr);
+            }
+        }
+
+        // validators are reset by storing empty attribute values
+        if (etag != null && etag.isEmpty()) { etag = null; }
+        if (lastModified != null && lastModified.isEmpty()) { lastModified = null; }
+
+        watermarkLink = OPMLManager.getAttributeNS(ol.getNode(),
+                                                   OPMLManager.NOVINAR_NS,
+                                                   OPMLManager.A_WATERMARK_LINK,
+                                                   null);
+        String watermarkStr = OPMLManager.getAttributeNS(ol.getNode(),
+                                                         OPMLManager.NOVINAR_NS,
+                                                         OPMLManager.A_WATERMARK_DATE,
+                                                         null);
+        watermarkDate = null;
+        if (watermarkStr != null && !watermarkStr.isEmpty()) {
+            try {
+                watermarkDate = Instant.parse(watermarkStr);
+            } catch (DateTimeParseException pe) {
+                Novinar.getLogger().severe("failed to parse Channel " + getTitle()
+                                           + " watermark: " + watermarkStr);
+            }
+        }
+        if (watermarkLink != null && watermarkLink.isEmpty()) { watermarkLink = null; }
+
+        feedFormat = OPMLManager.getAttributeNS(ol.getNode(),
+                                                OPMLManager.NOVINAR_NS,
+                                                OPMLManager.A_FEED_FORMAT,
+                                                null);
+        if (feedFormat != null && feedFormat.isEmpty()) { feedFormat = null; }
     } // end Channel
 
     /** primary key */
@@ -129,6 +221,97 @@ public class Channel
 	setLatestUpdate(Instant.now());
     }
 
+    /** Value of the <tt>ETag</tt> header of the last processed feed
+     * download, or <tt>null</tt> if the server didn't send any.
+     */
+    public String getETag() {
+        return etag;
+    }
+
+    /** Value of the <tt>Last-Modified</tt> header of the last
+     * processed feed download, or <tt>null</tt> if the server didn't
+     * send any.
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /** Remember HTTP cache validators to be sent with the next
+     * conditional GET request as <tt>If-None-Match</tt> and
+     * <tt>If-Modified-Since</tt> headers.
+     */
+    public void setValidators(String etag, String lastModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+
+        OPMLManager oman = ol.getOPMLManager();
+        oman.setAttribute(ol.getNode(), OPMLManager.NOVINAR_NS, OPMLManager.Q_ETAG,
+                          etag == null ? "" : etag);
+        oman.setAttribute(ol.getNode(), OPMLManager.NOVINAR_NS, OPMLManager.Q_LAST_MODIFIED,
+                          lastModified == null ? "" : lastModified);
+    }
+
+    /** Number of downloads skipped because the server replied with
+     * "304 Not Modified" since the application start.
+     */
+    public int getNotModifiedCount() {
+        return notModifiedCount.get();
+    }
+
+    /** Register a "304 Not Modified" reply for this channel.
+     *
+     * @return updated number of such replies.
+     */
+    public int countNotModified() {
+        return notModifiedCount.incrementAndGet();
+    }
+
+    /** Total number of bytes received over the wire for this channel
+     * since the application start.
+     */
+    public long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+
+    /** Total number of feed bytes after decoding the content coding
+     * (gzip, deflate) since the application start.
+     */
+    public long getUncompressedBytes() {
+        return uncompressedBytes.get();
+    }
+
+    /** Account the traffic of a single feed download. */
+    public void countTransferredBytes(long compressed, long uncompressed) {
+        compressedBytes.addAndGet(compressed);
+        uncompressedBytes.addAndGet(uncompressed);
+    }
+
+    /** Account the items stored in the database: inserted, updated
+     * and the existing ones left alone because their contents didn't
+     * change.
+     */
+    public void countStoredItems(int inserted, int updated, int unchanged) {
+        insertedItems.addAndGet(inserted);
+        updatedItems.addAndGet(updated);
+        unchangedItems.addAndGet(unchanged);
+    }
+
+    /** Number of new items inserted since the application start. */
+    public long getInsertedItems() {
+        return insertedItems.get();
+    }
+
+    /** Number of existing items rewritten since the application start. */
+    public long getUpdatedItems() {
+        return updatedItems.get();
+    }
+
+    /** Number of item updates skipped since the application start
+     * because nothing has changed. */
+    public long getUnchangedItems() {
+        return unchangedItems.get();
+    }
+
     public boolean getIgnoreOnBoot() {
         return ol.getIgnoreOnBoot();
     }
@@ -137,6 +320,183 @@ public class Channel
     	return ol.getUpdatePeriod();
     }
 
+    /** Refresh interval learned from the rate of new items.
+     *
+     * @return learned interval or <tt>null</tt> if nothing has been
+     * learned yet.
+     */
+    public Duration getAdaptiveInterval() {
+        return adaptiveInterval;
+    }
+
+    public void setAdaptiveInterval(Duration interval) {
+        this.adaptiveInterval = interval;
+        OPMLManager oman = ol.getOPMLManager();
+        oman.setAttribute(ol.getNode(), OPMLManager.NOVINAR_NS, OPMLManager.Q_ADAPTIVE_INTERVAL,
+                          interval.toString());
+    }
+
+    /** How long to wait between two refreshes of this channel.
+     *
+     * <p>For the ADAPTIVE update period returns the learned interval,
+     * or the default period if nothing has been learned yet.
+     *
+     * @return refresh interval or <tt>null</tt> if the channel should
+     * never be refreshed automatically.
+     */
+    public Duration getRefreshInterval() {
+        UpdatePeriod updatePeriod = getUpdatePeriod();
+        if (updatePeriod == null || updatePeriod == UpdatePeriod.NEVER) {
+            return null;
+        }
+        if (updatePeriod == UpdatePeriod.ADAPTIVE) {
+            return (adaptiveInterval == null)
+                ? UpdatePeriod.DEFAULT_UPDATE_PERIOD.getDuration()
+                : adaptiveInterval;
+        }
+        return updatePeriod.getDuration();
+    }
+
+    /** How often the publisher says the feed changes: RSS
+     * <tt>ttl</tt> or the syndication module <tt>updatePeriod</tt> and
+     * <tt>updateFrequency</tt>. <tt>null</tt> if not published.
+     */
+    public synchronized Duration getPublisherInterval() {
+        return publisherInterval;
+    }
+
+    /** Hours (0-23, GMT) when the feed should not be read, as listed
+     * in the RSS <tt>skipHours</tt> element. */
+    public synchronized Set<Integer> getSkipHours() {
+        return skipHours;
+    }
+
+    /** Days when the feed should not be read, as listed in the RSS
+     * <tt>skipDays</tt> element. */
+    public synchronized Set<DayOfWeek> getSkipDays() {
+        return skipDays;
+    }
+
+    /** Remember refresh hints published in the feed itself. */
+    public synchronized void setPublisherHints(Duration interval,
+                                               Set<Integer> skipHours,
+                                               Set<DayOfWeek> skipDays) {
+        this.publisherInterval = interval;
+        this.skipHours = (skipHours == null || skipHours.isEmpty())
+            ? Collections.emptySet()
+            : Collections.unmodifiableSet(new HashSet<>(skipHours));
+        this.skipDays = (skipDays == null || skipDays.isEmpty())
+            ? Collections.emptySet()
+            : Collections.unmodifiableSet(EnumSet.copyOf(skipDays));
+    }
+
+    /** GUID, or link if it has none, of the newest item processed
+     * last time, <tt>null</tt> if the next refresh must process all
+     * items.
+     */
+    public synchronized String getWatermarkLink() {
+        return watermarkLink;
+    }
+
+    /** Timestamp of the newest item processed last time. */
+    public synchronized Instant getWatermarkDate() {
+        return watermarkDate;
+    }
+
+    /** Remember the newest processed item, or forget it when given
+     * <tt>null</tt> values. */
+    public synchronized void setWatermark(String link, Instant date) {
+        this.watermarkLink = link;
+        this.watermarkDate = date;
+
+        OPMLManager oman = ol.getOPMLManager();
+        oman.setAttribute(ol.getNode(), OPMLManager.NOVINAR_NS, OPMLManager.Q_WATERMARK_LINK,
+                          link == null ? "" : link);
+        oman.setAttribute(ol.getNode(), OPMLManager.NOVINAR_NS, OPMLManager.Q_WATERMARK_DATE,
+                          date == null ? "" : date.toString());
+    }
+
+    /** Name of the feed format (RSS, RDF, ATOM) detected when the
+     * feed was processed last time, <tt>null</tt> if not known yet.
+     */
+    public String getFeedFormat() {
+        return feedFormat;
+    }
+
+    /** Remember the detected feed format, or forget it when given
+     * <tt>null</tt>. */
+    public synchronized void setFeedFormat(String feedFormat) {
+        this.feedFormat = feedFormat;
+
+        OPMLManager oman = ol.getOPMLManager();
+        oman.setAttribute(ol.getNode(), OPMLManager.NOVINAR_NS, OPMLManager.Q_FEED_FORMAT,
+                          feedFormat == null ? "" : feedFormat);
+    }
+
+    /** Number of the timestamp format that parsed item dates of
+     * this channel last time, -1 if not known yet.
+     *
+     * @see org.bb.vityok.novinar.feed.FeedParser#parseTimestamp
+     */
+    public int getTimestampFormat() {
+        return timestampFormat;
+    }
+
+    public void setTimestampFormat(int timestampFormat) {
+        this.timestampFormat = timestampFormat;
+    }
+
+    /** How long the server allows to cache the feed according to the
+     * Cache-Control or Expires headers, <tt>null</tt> if unknown.
+     */
+    public synchronized Duration getCacheLifetime() {
+        return cacheLifetime;
+    }
+
+    public synchronized void setCacheLifetime(Duration cacheLifetime) {
+        this.cacheLifetime = cacheLifetime;
+    }
+
+    /** Number of refreshes skipped because of the publisher refresh
+     * hints since the application start. */
+    public int getSkippedByHints() {
+        return skippedByHints.get();
+    }
+
+    public int countSkippedByHints(int skipped) {
+        return skippedByHints.addAndGet(skipped);
+    }
+
+    /** Number of consecutive failed refreshes. */
+    public synchronized int getFailureCount() {
+        return failureCount;
+    }
+
+    /** The channel should not be refreshed automatically before this
+     * time, <tt>null</tt> if it is not backing off.
+     */
+    public synchronized Instant getRetryAt() {
+        return retryAt;
+    }
+
+    /** Circuit is open when the channel failed too many times in a row
+     * and is retried only rarely.
+     */
+    public synchronized boolean isCircuitOpen() {
+        return circuitOpen;
+    }
+
+    public synchronized void setBackoff(int failureCount, Instant retryAt, boolean circuitOpen) {
+        this.failureCount = failureCount;
+        this.retryAt = retryAt;
+        this.circuitOpen = circuitOpen;
+    }
+
+    /** Forget about the past failures. */
+    public void resetBackoff() {
+        setBackoff(0, null, false);
+    }
+
     public String getProblems() {
     	return problems;
     }
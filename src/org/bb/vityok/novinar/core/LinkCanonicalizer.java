@@ -0,0 +1,151 @@
+package org.bb.vityok.novinar.core;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/** Reduces the links of news items to the form they are compared in.
+ *
+ * <p>The same article often comes back with other utm_* parameters, a
+ * fragment, over https instead of http or with the host spelled in
+ * another case. The canonical link:
+ * <ul>
+ * <li>has the scheme and the host in lower case, https is replaced by
+ * http</li>
+ * <li>has no default port, no fragment and no tracking
+ * parameters</li>
+ * <li>has the remaining query parameters sorted by their names</li>
+ * </ul>
+ *
+ * <p>The canonical link only identifies the item, the original link is
+ * kept for display. Links that are not absolute hierarchical URIs are
+ * only trimmed.
+ */
+public class LinkCanonicalizer
+{
+    /** Query parameters removed by default, a trailing "*" matches
+     * any name with the given prefix. */
+    public static final List<String> DEFAULT_TRACKING_PARAMS =
+        Collections.unmodifiableList(Arrays.asList("utm_*", "fbclid", "gclid", "dclid", "yclid",
+                                                   "msclkid", "mc_cid", "mc_eid", "_hsenc",
+                                                   "_hsmpl", "igshid"));
+
+    private final boolean enabled;
+    private final List<String> names = new ArrayList<>();
+    private final List<String> prefixes = new ArrayList<>();
+
+    /** @param enabled when false, links are only trimmed
+     * @param trackingParams query parameters to remove */
+    public LinkCanonicalizer(boolean enabled, List<String> trackingParams)
+    {
+        this.enabled = enabled;
+        for (String param : trackingParams) {
+            param = param.trim().toLowerCase(Locale.ROOT);
+            if (param.endsWith("*")) {
+                prefixes.add(param.substring(0, param.length() - 1));
+            } else if (!param.isEmpty()) {
+                names.add(param);
+            }
+        }
+    }
+
+    /** Reads the configuration from the system properties.
+     *
+     * @see Novinar#PROP_CANONICAL_LINKS
+     * @see Novinar#PROP_TRACKING_PARAMS
+     */
+    public static LinkCanonicalizer fromSystemProperties()
+    {
+        boolean enabled = !"false".equals(System.getProperty(Novinar.PROP_CANONICAL_LINKS));
+        String params = System.getProperty(Novinar.PROP_TRACKING_PARAMS);
+        return new LinkCanonicalizer(enabled, (params == null)
+                                     ? DEFAULT_TRACKING_PARAMS
+                                     : Arrays.asList(params.split(",")));
+    }
+
+    /** @return canonical form of the link, null for null */
+    public String canonicalize(String link)
+    {
+        if (link == null) {
+            return null;
+        }
+        link = link.trim();
+        if (!enabled) {
+            return link;
+        }
+
+        URI uri;
+        try {
+            uri = new URI(link);
+        } catch (URISyntaxException use) {
+            return link;
+        }
+        if (uri.isOpaque() || uri.getScheme() == null || uri.getRawAuthority() == null) {
+            return link;
+        }
+        String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+        if (scheme.equals("https")) {
+            scheme = "http";
+        }
+
+        StringBuilder sb = new StringBuilder(link.length());
+        sb.append(scheme).append("://");
+        if (uri.getHost() == null) {
+            // registry based authority, keep it as it is
+            sb.append(uri.getRawAuthority().toLowerCase(Locale.ROOT));
+        } else {
+            if (uri.getRawUserInfo() != null) {
+                sb.append(uri.getRawUserInfo()).append('@');
+            }
+            sb.append(uri.getHost().toLowerCase(Locale.ROOT));
+            int port = uri.getPort();
+            if (port != -1 && !(port == 80 && uri.getScheme().equalsIgnoreCase("http"))
+                && !(port == 443 && uri.getScheme().equalsIgnoreCase("https"))) {
+                sb.append(':').append(port);
+            }
+        }
+        String path = uri.getRawPath();
+        sb.append((path == null || path.isEmpty()) ? "/" : path);
+
+        String query = uri.getRawQuery();
+        if (query != null) {
+            List<String> params = new ArrayList<>();
+            for (String param : query.split("&")) {
+                if (!param.isEmpty() && !isTracking(param)) {
+                    params.add(param);
+                }
+            }
+            // stable, the values of a repeated parameter stay in order
+            params.sort((a, b) -> paramName(a).compareTo(paramName(b)));
+            if (!params.isEmpty()) {
+                sb.append('?').append(String.join("&", params));
+            }
+        }
+        return sb.toString();
+    }
+
+    private boolean isTracking(String param)
+    {
+        String name = paramName(param).toLowerCase(Locale.ROOT);
+        if (names.contains(name)) {
+            return true;
+        }
+        for (String prefix : prefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String paramName(String param)
+    {
+        int eq = param.indexOf('=');
+        return (eq < 0) ? param : param.substring(0, eq);
+    }
+}
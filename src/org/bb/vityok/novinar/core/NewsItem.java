@@ -18,6 +18,7 @@ public class NewsItem
 	private SimpleIntegerProperty id = new SimpleIntegerProperty();
     private SimpleStringProperty title = new SimpleStringProperty();
     private SimpleStringProperty link = new SimpleStringProperty();
+    private SimpleStringProperty guid = new SimpleStringProperty();
     private SimpleStringProperty description = new SimpleStringProperty();
     private SimpleStringProperty creator = new SimpleStringProperty();
     private SimpleStringProperty date = new SimpleStringProperty();
@@ -42,6 +43,13 @@ public class NewsItem
     public String getLink() { return link.get(); }
     public void setLink(String link) { this.link.set(link); }
 
+    /** Identifier of the item given by the feed: RSS guid, Atom id
+     * or RDF about. Unlike the link it is not supposed to change, null
+     * if the feed doesn't provide one.
+     */
+    public String getGuid() { return guid.get(); }
+    public void setGuid(String guid) { this.guid.set(guid); }
+
     public String getDescription() { return description.get(); }
     public void setDescription(String description) { this.description.set(description); }
 
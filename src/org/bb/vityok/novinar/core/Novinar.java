@@ -10,10 +10,6 @@ import java.time.Instant;
 import java.util.List;
 import java.util.LinkedList;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeUnit;
-
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.logging.FileHandler;
@@ -37,22 +33,88 @@ public class Novinar
      * database. */
     public static final String PROP_DB_DIR = "org.bb.vityok.novinar.db_dir";
 
+    /** System property selecting how feed loading tasks are run:
+     * "fixed" for a small pool of threads, or "virtual" for a virtual
+     * thread per feed.
+     *
+     * @see org.bb.vityok.novinar.feed.FetchExecutors
+     */
+    public static final String PROP_FETCH_EXECUTOR = "org.bb.vityok.novinar.fetch_executor";
+
+    /** System property defining maximum number of feeds loaded at
+     * once in the "virtual" fetch executor mode. */
+    public static final String PROP_FETCH_LIMIT = "org.bb.vityok.novinar.fetch_limit";
+
+    /** System property defining maximum number of database
+     * connections open at once. */
+    public static final String PROP_DB_CONNECTIONS = "org.bb.vityok.novinar.db_connections";
+
     /** System property defining location of the OPML file with the
      * feeds directory. */
     public static final String PROP_OPML_FILE = "org.bb.vityok.novinar.opml_file";
 
+    /** System property defining maximum number of concurrent feed
+     * downloads from the same host. */
+    public static final String PROP_HOST_CONCURRENCY = "org.bb.vityok.novinar.host_concurrency";
+
+    /** System property defining minimum delay in milliseconds between
+     * two feed downloads from the same host. */
+    public static final String PROP_HOST_DELAY = "org.bb.vityok.novinar.host_delay";
+
+    /** System property defining the shortest refresh interval for
+     * channels with the adaptive update period, as ISO-8601 duration
+     * (e.g. PT15M). */
+    public static final String PROP_ADAPTIVE_MIN = "org.bb.vityok.novinar.adaptive_min";
+
+    /** System property defining the longest refresh interval for
+     * channels with the adaptive update period, as ISO-8601 duration
+     * (e.g. P2D). */
+    public static final String PROP_ADAPTIVE_MAX = "org.bb.vityok.novinar.adaptive_max";
+
+    /** System property selecting how feeds are parsed: "streaming"
+     * (default) reads items in a single pass and falls back to the
+     * DOM parsers on failure, "dom" always builds the DOM tree. */
+    public static final String PROP_FEED_PARSER = "org.bb.vityok.novinar.feed_parser";
+
+    /** System property that, when "true", makes every refresh store
+     * all items of the feed instead of stopping at the items stored
+     * by the previous refresh. */
+    public static final String PROP_FULL_RESYNC = "org.bb.vityok.novinar.full_resync";
+
+    /** System property defining the maximum number of items the feed
+     * parsers hand over for storing at once, 0 (default) for the
+     * whole feed. */
+    public static final String PROP_INGEST_BATCH = "org.bb.vityok.novinar.ingest_batch";
+
+    /** System property that, when "false", makes items be matched by
+     * their links exactly as given in the feed instead of the
+     * canonical links.
+     *
+     * @see LinkCanonicalizer
+     */
+    public static final String PROP_CANONICAL_LINKS = "org.bb.vityok.novinar.canonical_links";
+
+    /** System property defining comma-separated names of the query
+     * parameters removed from the canonical links, a trailing "*"
+     * matches any suffix. Replaces the default list (utm_*, fbclid,
+     * gclid and the like). */
+    public static final String PROP_TRACKING_PARAMS = "org.bb.vityok.novinar.tracking_params";
+
+    /** System property defining the number of news items loaded into
+     * the items table at once. */
+    public static final String PROP_PAGE_SIZE = "org.bb.vityok.novinar.page_size";
+
+    /** Number of news items loaded at once by default. */
+    public static final int DEFAULT_PAGE_SIZE = 200;
+
     private static final Logger logger = Logger.getLogger(Novinar.class.getName());
 
     private OPMLManager oman;
     private Backend dbend;
     private NewsItemDAO niDAO;
     private FeedReader reader;
-
-    // used to run jobs/tasks in background, for example the periodic
-    // channel updater thread or single channel refresh tasks. At the
-    // momen at leas one task runs forever: the background refresh
-    // thread
-    private ExecutorService taskRunner;
+    private String dbName;
+    private final int pageSize = Math.max(1, Integer.getInteger(PROP_PAGE_SIZE, DEFAULT_PAGE_SIZE));
 
     public enum Status {
         READY, READING_FEEDS, STARTING
@@ -86,12 +148,11 @@ public class Novinar
             e.printStackTrace();
         }
         logger.severe("loading Novinar with: opml=" + opmlFile + "; db=" + dbName);
+        this.dbName = dbName;
         dbend = new Backend(dbName);
         niDAO = dbend.getNewsItemDAO();
         oman = new OPMLManager(opmlFile);
         reader = new FeedReader(this);
-
-        taskRunner = Executors.newFixedThreadPool(2);
     }
 
     public void setup ()
@@ -99,7 +160,6 @@ public class Novinar
     {
 	// start the background channel refresh thread
         reader.start();
-        // taskRunner.submit();
     }
 
     /** Shutdown Novinar core.
@@ -113,18 +173,6 @@ public class Novinar
         reader.close();
         dbend.close();
 
-        try {
-            taskRunner.shutdown();
-            taskRunner.awaitTermination(5, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            getLogger().severe("tasks interrupted");
-        } finally {
-            if (!taskRunner.isTerminated()) {
-                getLogger().severe("cancel non-finished tasks");
-            }
-            taskRunner.shutdownNow();
-        }
-
         getLogger().severe("Novinar core shut down");
     }
 
@@ -236,16 +284,77 @@ public class Novinar
         return niDAO.getNewsItemByChannel(chan);
     }
 
+    /** Returns the next page of news items for the given outline,
+     * newest first.
+     *
+     * @param after last item of the previous page, null for the first
+     * page
+     * @return at most getPageSize() items, fewer on the last page
+     */
+    public List<NewsItem> getNewsItemPageFor(Outline ol, NewsItem after)
+        throws Exception
+    {
+        return niDAO.getNewsItemPage(getChannelsUnder(ol), after, pageSize);
+    }
+
+    /** Returns the next page of news items in the trash bin, newest
+     * first.
+     *
+     * @see #getNewsItemPageFor
+     */
+    public List<NewsItem> getNewsItemPageInTrash(NewsItem after)
+        throws Exception
+    {
+        return niDAO.getNewsItemsInTrashPage(after, pageSize);
+    }
+
+    /** @return number of news items of the channels under the outline,
+     * without loading them */
+    public int countNewsItemsFor(Outline ol)
+        throws Exception
+    {
+        return niDAO.countNewsItems(getChannelsUnder(ol));
+    }
+
+    public int countNewsItemsInTrash() { return niDAO.countNewsItemsInTrash(); }
+
+    /** @return number of news items loaded at once */
+    public int getPageSize() { return pageSize; }
+
     public void insertOrUpdateItem(Channel chan, NewsItem newsItem)
         throws Exception
     {
         niDAO.insertOrUpdateItem(chan, newsItem);
     }
 
+    /** Stores a batch of items of the channel, all of them or a chunk
+     * of a large feed.
+     */
+    public void insertOrUpdateItems(Channel chan, List<NewsItem> newsItems)
+        throws Exception
+    {
+        niDAO.insertOrUpdateItems(chan, newsItems);
+    }
+
+    /** Returns publication timestamps of up to limit newest items of
+     * the channel, newest first.
+     */
+    public List<Instant> getRecentItemDates(Channel chan, int limit)
+        throws Exception
+    {
+        return niDAO.getRecentItemDates(chan, limit);
+    }
+
     public int getTotalNewsItemsCount() { return niDAO.getTotalNewsItemsCount(); }
     public int getUnreadNewsItemsCount() { return niDAO.getUnreadNewsItemsCount(); }
     public int getRemovedNewsItemsCount() { return niDAO.getRemovedNewsItemsCount(); }
     public int getDbSchemaVersion() { return dbend.getSchemaVersion(); }
+    public boolean isDbCreated() { return dbend.isCreated(); }
+    public long getStatementCacheHits() { return dbend.getStatementCacheHits(); }
+    public long getStatementCacheMisses() { return dbend.getStatementCacheMisses(); }
+    public int getKnownKeyCount(Channel chan) { return niDAO.getKnownKeyCount(chan); }
+    public long getKnownKeyBytes(Channel chan) { return niDAO.getKnownKeyBytes(chan); }
+    public long getKnownKeyBytes() { return niDAO.getKnownKeyBytes(); }
 
 
     public void markNewsItemRead(NewsItem item, boolean isRead)
@@ -286,6 +395,17 @@ public class Novinar
         }
     }
 
+    /** Reloads all items of the channel or channels in the folder,
+     * including the ones stored already.
+     */
+    public void resyncFeeds(Outline ol)
+        throws Exception
+    {
+        for (Channel chan : getChannelsUnder(ol)) {
+            reader.resyncChannel(chan);
+        }
+    }
+
     public void loadFeedsBg(final Outline ol)
         throws Exception
     {
@@ -295,6 +415,8 @@ public class Novinar
     public void loadConfig()
     {
         oman.loadConfig();
+        // channel objects have been rebuilt from the OPML file
+        reader.scheduleChannels(getChannels(), false);
     }
 
     public void storeConfig()
@@ -311,6 +433,13 @@ public class Novinar
         return oman.getRootOutline();
     }
 
+    /** Directory of the on-disk feed cache, it is located next to the
+     * database directory.
+     */
+    public File getFeedCacheDir() {
+        return new File(dbName + "-cache");
+    }
+
     public static Logger getLogger() {
         return logger;
     }
@@ -337,9 +466,17 @@ public class Novinar
 
     public Outline appendChannel(Outline ol, String url, String title) {
         Outline newOl = oman.appendChannel(ol, url, title);
+        reader.rescheduleChannel(newOl.getChannel());
         return newOl;
     }
 
+    /** Re-key the channel in the refresh queue after its properties
+     * (like the update period) have changed.
+     */
+    public void rescheduleChannel(Channel chan) {
+        reader.rescheduleChannel(chan);
+    }
+
     public Outline appendFolder(Outline ol, String name) {
         Outline newOl = oman.appendFolder(ol, name);
         return newOl;
@@ -362,6 +499,8 @@ public class Novinar
     public void removeChannel(Outline ol) {
         Channel channel = ol.getChannel();
         logger.info("removing channel: " + channel);
+        reader.unscheduleChannel(channel);
+        reader.forgetChannel(channel);
         oman.removeEntry(ol);
         niDAO.removeChannelItems(channel);
     }
@@ -7,13 +7,8 @@ import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.LinkedList;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
@@ -24,6 +19,7 @@ import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 
 
 /** Managing the OPML file that defines the subscribed feeds and their
@@ -48,6 +44,32 @@ public class OPMLManager
     public static final String A_LAST_UPDATED = "lastUpdated";
     public static final String Q_LAST_UPDATED = Q_NOVINAR + A_LAST_UPDATED;
 
+    // HTTP cache validators of the last successfully processed
+    // download, sent back with conditional GET requests
+    public static final String A_ETAG = "etag";
+    public static final String Q_ETAG = Q_NOVINAR + A_ETAG;
+
+    public static final String A_LAST_MODIFIED = "lastModified";
+    public static final String Q_LAST_MODIFIED = Q_NOVINAR + A_LAST_MODIFIED;
+
+    // refresh interval learned for channels with the "adaptive"
+    // update period, stored as an ISO-8601 duration
+    public static final String A_ADAPTIVE_INTERVAL = "adaptiveInterval";
+    public static final String Q_ADAPTIVE_INTERVAL = Q_NOVINAR + A_ADAPTIVE_INTERVAL;
+
+    // newest item processed last time: items at or below it are
+    // already stored
+    public static final String A_WATERMARK_LINK = "watermarkLink";
+    public static final String Q_WATERMARK_LINK = Q_NOVINAR + A_WATERMARK_LINK;
+
+    public static final String A_WATERMARK_DATE = "watermarkDate";
+    public static final String Q_WATERMARK_DATE = Q_NOVINAR + A_WATERMARK_DATE;
+
+    // feed format detected on the previous downloads, the sniffing
+    // is skipped for the known ones
+    public static final String A_FEED_FORMAT = "feedFormat";
+    public static final String Q_FEED_FORMAT = Q_NOVINAR + A_FEED_FORMAT;
+
     //new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
     public static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ISO_INSTANT;
 
@@ -100,10 +122,7 @@ public class OPMLManager
     public void loadConfig(File configFile) {
         channels = new LinkedList<>();
 	try {
-	    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-	    dbf.setNamespaceAware(true);
-	    DocumentBuilder db = dbf.newDocumentBuilder();
-	    doc = db.parse(configFile);
+	    doc = XMLParsers.parse(new InputSource(configFile.toURI().toASCIIString()));
 
             Element rootNode = doc.getDocumentElement();
             rootNode.setAttributeNS("http://www.w3.org/2000/xmlns/",
@@ -128,11 +147,10 @@ public class OPMLManager
     /** Store OPML data to the given configFile. */
     public void storeConfig(File configFile) {
 	try {
-	    Transformer transformer = TransformerFactory.newInstance().newTransformer();
 	    Result output = new StreamResult(configFile);
 	    Source input = new DOMSource(doc);
 
-	    transformer.transform(input, output);
+	    XMLParsers.transform(input, output);
 	} catch (Exception e) {
 	    e.printStackTrace();
 	}
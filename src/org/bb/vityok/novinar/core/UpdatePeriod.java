@@ -8,6 +8,11 @@ import java.time.Duration;
 /** Possible update/refresh periods for feeds.
  *
  * User has only the following options to chose from.
+ *
+ * <p>ADAPTIVE has no fixed duration: the refresh interval is learned
+ * from the rate at which the channel publishes new items.
+ *
+ * @see Channel#getRefreshInterval()
  */
 public enum UpdatePeriod
 {
@@ -19,6 +24,7 @@ public enum UpdatePeriod
     DAYS_1 ("days1", "1 day", Duration.ofDays(1)),
     DAYS_2 ("days2", "2 days", Duration.ofDays(2)),
     DAYS_7 ("days7", "7 days", Duration.ofDays(7)),
+    ADAPTIVE ("adaptive", "adaptive", null),
     NEVER ("never", "never", null);
 
     private final String code;
@@ -53,7 +59,10 @@ public enum UpdatePeriod
         return code;
     }
 
-    /** Computer representation of the corresponding duration. */
+    /** Computer representation of the corresponding duration.
+     *
+     * @return duration or <tt>null</tt> for NEVER and ADAPTIVE.
+     */
     public Duration getDuration() {
         return dur;
     }
@@ -0,0 +1,159 @@
+package org.bb.vityok.novinar.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import javax.xml.transform.Result;
+import javax.xml.transform.Source;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/** Provides XML parsers for the feeds and the OPML file.
+ *
+ * <p>Looking up the JAXP implementation and constructing a parser is
+ * expensive compared to parsing a typical feed. The factories are
+ * looked up and configured once and shared by all threads, creating
+ * readers and parsers with a configured factory is safe.
+ *
+ * <p>DocumentBuilder and Transformer are not thread-safe, they are
+ * borrowed from small pools for a single parse or transformation and
+ * reset when they come back. The pools don't depend on threads, so
+ * the "virtual" fetch executor mode, which runs every task in a new
+ * thread, reuses the same few parsers as the fixed thread pool.
+ */
+public class XMLParsers
+{
+    /** Number of idle parsers of every kind kept for reuse. */
+    public static final int POOL_SIZE = 8;
+
+    private static final DocumentBuilderFactory documentBuilderFactory;
+    private static final TransformerFactory transformerFactory;
+    private static final XMLInputFactory inputFactory;
+
+    static {
+        documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+        transformerFactory = TransformerFactory.newInstance();
+        inputFactory = XMLInputFactory.newFactory();
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        // feeds never need a DTD, and it must not be fetched from
+        // the network either
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+
+    private static final Pool<DocumentBuilder> documentBuilders =
+        new Pool<>(XMLParsers::newDocumentBuilder, DocumentBuilder::reset);
+
+    private static final Pool<Transformer> transformers =
+        new Pool<>(XMLParsers::newTransformer, Transformer::reset);
+
+    private XMLParsers() {}
+
+    /** Idle instances waiting for reuse, a new one is created when
+     * there are none and the extra ones are dropped. */
+    private static class Pool<T>
+    {
+        private final BlockingQueue<T> idle = new ArrayBlockingQueue<>(POOL_SIZE);
+        private final Supplier<T> factory;
+        private final Consumer<T> reset;
+
+        Pool(Supplier<T> factory, Consumer<T> reset)
+        {
+            this.factory = factory;
+            this.reset = reset;
+        }
+
+        T borrow()
+        {
+            T instance = idle.poll();
+            return (instance != null) ? instance : factory.get();
+        }
+
+        void giveBack(T instance)
+        {
+            reset.accept(instance);
+            idle.offer(instance);
+        }
+    }
+
+    private static DocumentBuilder newDocumentBuilder()
+    {
+        // creating parsers is thread-safe, changing the factory
+        // configuration would not be
+        try {
+            return documentBuilderFactory.newDocumentBuilder();
+        } catch (ParserConfigurationException pce) {
+            throw new IllegalStateException("failed to configure XML parser", pce);
+        }
+    }
+
+    private static Transformer newTransformer()
+    {
+        synchronized (transformerFactory) {
+            try {
+                return transformerFactory.newTransformer();
+            } catch (TransformerConfigurationException tce) {
+                throw new IllegalStateException("failed to configure XML transformer", tce);
+            }
+        }
+    }
+
+    /** Build the DOM tree of the document with a namespace-aware
+     * parser. */
+    public static Document parse(InputSource source)
+        throws IOException, SAXException
+    {
+        DocumentBuilder builder = documentBuilders.borrow();
+        try {
+            return builder.parse(source);
+        } finally {
+            documentBuilders.giveBack(builder);
+        }
+    }
+
+    /** Streaming reader of the given document.
+     *
+     * @param encoding character set of the document, or <tt>null</tt>
+     * to let the parser detect it
+     */
+    public static XMLStreamReader createXMLStreamReader(InputStream is, String encoding)
+        throws XMLStreamException
+    {
+        return (encoding == null)
+            ? inputFactory.createXMLStreamReader(is)
+            : inputFactory.createXMLStreamReader(is, encoding);
+    }
+
+    /** Serialize the source, e.g. a DOM tree, with an identity
+     * transformer. */
+    public static void transform(Source input, Result output)
+        throws TransformerException
+    {
+        Transformer transformer = transformers.borrow();
+        try {
+            transformer.transform(input, output);
+        } finally {
+            transformers.giveBack(transformer);
+        }
+    }
+}
@@ -10,6 +10,9 @@ import java.sql.Statement;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.bb.vityok.novinar.core.LinkCanonicalizer;
+import org.bb.vityok.novinar.core.Novinar;
+
 
 /** Database backend for storing and processing news items.
  *
@@ -21,6 +24,7 @@ public class Backend
     /* the default framework is embedded */
     private final String framework = "embedded";
     private final String protocol = "jdbc:derby:";
+    private final String driver = "org.apache.derby.jdbc.EmbeddedDriver";
 
     public static final String DEFAULT_DB_NAME = "novynarDB";
 
@@ -31,11 +35,14 @@ public class Backend
      * Based on the value stored in the novinar_meta_inf table can be used
      * for graceful migration from older versions to the newer releases.
      */
-    public final static int SCHEMA_VERSION = 1;
+    public final static int SCHEMA_VERSION = 6;
 
     private String dbName;
 
-    private Connection conn;
+    private ConnectionPool pool;
+
+    /** Set when setup() created the database tables from scratch. */
+    private boolean created = false;
 
     private NewsItemDAO niDAO;
 
@@ -66,9 +73,42 @@ public class Backend
         return niDAO;
     }
 
-    public Connection getConnection()
+    /** Checks a connection out of the pool.
+     *
+     * <p>The connection goes back to the pool once the returned object
+     * is closed, use it in a try-with-resources block. Statements it
+     * prepares for constant SQL are cached together with the
+     * connection and must not be closed, result sets should be closed
+     * as usual.
+     */
+    PooledConnection checkout()
     {
-        return conn;
+        try {
+            return pool.checkout();
+        } catch (SQLException sqle) {
+            printSQLException(sqle);
+            throw new IllegalStateException("no connection to the database " + dbName, sqle);
+        }
+    }
+
+    /** @return true if the database was empty and its tables were
+     * created by this backend, whatever was kept next to it belongs
+     * to another database */
+    public boolean isCreated()
+    {
+        return created;
+    }
+
+    /** @return number of times a cached statement was reused */
+    public long getStatementCacheHits()
+    {
+        return (pool == null) ? 0 : pool.getStatementHits();
+    }
+
+    /** @return number of times a statement had to be prepared */
+    public long getStatementCacheMisses()
+    {
+        return (pool == null) ? 0 : pool.getStatementMisses();
     }
 
     /**
@@ -87,9 +127,13 @@ public class Backend
 
         logger.info("Database backend is starting in " + framework + " mode. SETUP");
 
-        conn = null;
-
         Statement s;
+        PooledConnection pc = null;
+
+        // shutting the engine down in close() deregisters the driver,
+        // it has to be loaded again to open the database once more in
+        // the same JVM (the tests do that)
+        loadDriver();
 
         try {
 
@@ -105,12 +149,17 @@ public class Backend
              * points to, or the current directory (user.dir) if
              * derby.system.home is not set.
              */
-            conn = DriverManager.getConnection(protocol + dbName
-                                               + ";create=true", null);
+            DriverManager.getConnection(protocol + dbName
+                                        + ";create=true", null).close();
+            pool = new ConnectionPool(protocol + dbName,
+                                      Integer.getInteger(Novinar.PROP_DB_CONNECTIONS,
+                                                         ConnectionPool.DEFAULT_MAX_SIZE),
+                                      logger);
+            pc = checkout();
 
             logger.info("Connected to the database " + dbName);
 
-            s = conn.createStatement();
+            s = pc.getConnection().createStatement();
 
             // try creating the news_item table and quietly ignore the SQLException if it already exists
             s.execute("CREATE TABLE news_item("
@@ -135,6 +184,7 @@ public class Backend
                       // to 1 the item becomes candidate for final removal from the database.
                       + "is_removed SMALLINT DEFAULT 0 "
                       + ")");
+            created = true;
             logger.severe("Created table NEWS_ITEM");
         } catch (SQLException sqle) {
             if (!sqle.getSQLState().equals("X0Y32")) {
@@ -142,11 +192,45 @@ public class Backend
                 // complain only if something bad happened
                 printSQLException(sqle);
             }
+        } finally {
+            if (pc != null) {
+                pc.close();
+            }
         }
 
         int schemaVersion = getSchemaVersion();
         if (schemaVersion == 0) {
             upgradeSchema_NULL_v1();
+            schemaVersion = getSchemaVersion();
+        }
+        if (schemaVersion == 1) {
+            upgradeSchema_v1_v2();
+            schemaVersion = getSchemaVersion();
+        }
+        if (schemaVersion == 2) {
+            upgradeSchema_v2_v3();
+            schemaVersion = getSchemaVersion();
+        }
+        if (schemaVersion == 3) {
+            upgradeSchema_v3_v4();
+            schemaVersion = getSchemaVersion();
+        }
+        if (schemaVersion == 4) {
+            upgradeSchema_v4_v5();
+            schemaVersion = getSchemaVersion();
+        }
+        if (schemaVersion == 5) {
+            upgradeSchema_v5_v6();
+        }
+    }
+
+    /** Loads and registers the embedded Derby JDBC driver. */
+    private void loadDriver()
+    {
+        try {
+            Class.forName(driver).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException roe) {
+            logger.log(Level.SEVERE, "unable to load the JDBC driver " + driver, roe);
         }
     }
 
@@ -156,10 +240,9 @@ public class Backend
      */
     public int getSchemaVersion()
     {
-        Connection conn = getConnection();
-
         String sql = "SELECT schema_version FROM novinar_meta_inf";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (PooledConnection pc = checkout();
+             PreparedStatement ps = pc.getConnection().prepareStatement(sql)) {
             ResultSet rs = ps.executeQuery();
             if (rs.next()) {
         	int schema_version = rs.getInt("schema_version");
@@ -184,35 +267,312 @@ public class Backend
      */
     public void upgradeSchema_NULL_v1()
     {
-        Connection conn = getConnection();
+        try (PooledConnection pc = checkout()) {
+            Connection conn = pc.getConnection();
+
+            String sqlCreate = "CREATE TABLE novinar_meta_inf (schema_version INT)";
+            try (PreparedStatement ps = conn.prepareStatement(sqlCreate)) {
+                ps.execute();
+            } catch (SQLException e) {
+                logger.log(Level.SEVERE, "failed to create novinar_meta_inf table: ", e);
+            }
+
+            String sqlInsert = "INSERT INTO novinar_meta_inf (schema_version) VALUES (1)";
+            try (PreparedStatement ps = conn.prepareStatement(sqlInsert)) {
+                ps.execute();
+            } catch (SQLException e) {
+                logger.log(Level.SEVERE, "failed to update novinar_meta_inf table: ", e);
+            }
+
+            // is set to 1 when the news item is moved to the trash bin, but is not yet a
+            // candidate for the final removal from the database
+            String sqlAlter = "ALTER TABLE news_item ADD COLUMN is_trash SMALLINT DEFAULT 0";
+            try (PreparedStatement ps = conn.prepareStatement(sqlAlter)) {
+                ps.execute();
+            } catch (SQLException e) {
+                logger.log(Level.SEVERE, "failed to alter news_item table: ", e);
+            }
+        }
+
+        logger.severe("finished upgrade to the v1 database schema layout");
+    }
+
+
+
+    /**
+     * Upgrade database schema from v1 to v2 by adding indexes.
+     *
+     * <p>
+     * Link lookups when storing items and channel listings used to scan the
+     * whole <tt>news_item</tt> table. Adds:
+     * <ul>
+     * <li>unique constraint on <tt>link</tt>, or an ordinary index if the
+     * table already contains duplicate links</li>
+     * <li>index on <tt>(channel_id, is_trash, is_removed, date)</tt> for the
+     * channel listings</li>
+     * <li>index on <tt>is_trash</tt> for the trash bin</li>
+     * </ul>
+     *
+     * <p>
+     * Runs in a single transaction: if anything fails the schema stays at v1
+     * and the upgrade is attempted again on the next start.
+     */
+    public void upgradeSchema_v1_v2()
+    {
+        PooledConnection pc = checkout();
+        Connection conn = pc.getConnection();
 
-        String sqlCreate = "CREATE TABLE novinar_meta_inf (schema_version INT)";
-        try (PreparedStatement ps = conn.prepareStatement(sqlCreate)) {
-            ps.execute();
+        try {
+            conn.setAutoCommit(false);
+            try (Statement s = conn.createStatement()) {
+                boolean duplicates;
+                try (ResultSet rs = s.executeQuery("SELECT link FROM news_item"
+                                                   + " GROUP BY link HAVING COUNT(*) > 1")) {
+                    duplicates = rs.next();
+                }
+                if (duplicates) {
+                    logger.severe("news_item table contains duplicate links, not making them unique");
+                    s.execute("CREATE INDEX news_item_link_idx ON news_item(link)");
+                } else {
+                    // unlike a unique index, the constraint allows
+                    // several NULL links
+                    s.execute("ALTER TABLE news_item ADD CONSTRAINT news_item_link_uq UNIQUE (link)");
+                }
+                s.execute("CREATE INDEX news_item_channel_idx"
+                          + " ON news_item(channel_id, is_trash, is_removed, date)");
+                s.execute("CREATE INDEX news_item_trash_idx ON news_item(is_trash)");
+                s.executeUpdate("UPDATE novinar_meta_inf SET schema_version=2");
+            }
+            conn.commit();
+            logger.severe("finished upgrade to the v2 database schema layout");
         } catch (SQLException e) {
-            logger.log(Level.SEVERE, "failed to create novinar_meta_inf table: ", e);
+            logger.log(Level.SEVERE, "failed to upgrade to the v2 database schema layout: ", e);
+            try {
+                conn.rollback();
+            } catch (SQLException re) {
+                printSQLException(re);
+            }
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                printSQLException(e);
+            }
+            pc.close();
         }
+    }
+
+
+    /**
+     * Upgrade database schema from v2 to v3.
+     *
+     * <p>
+     * Adds <tt>content_hash</tt> column to the <tt>news_item</tt> table: hash of
+     * the stored item fields, updates that wouldn't change them are skipped.
+     * Existing items get their hash on the first update.
+     */
+    public void upgradeSchema_v2_v3()
+    {
+        PooledConnection pc = checkout();
+        Connection conn = pc.getConnection();
 
-        String sqlInsert = "INSERT INTO novinar_meta_inf (schema_version) VALUES (1)";
-        try (PreparedStatement ps = conn.prepareStatement(sqlInsert)) {
-            ps.execute();
+        try {
+            conn.setAutoCommit(false);
+            try (Statement s = conn.createStatement()) {
+                s.execute("ALTER TABLE news_item ADD COLUMN content_hash CHAR(32)");
+                s.executeUpdate("UPDATE novinar_meta_inf SET schema_version=3");
+            }
+            conn.commit();
+            logger.severe("finished upgrade to the v3 database schema layout");
         } catch (SQLException e) {
-            logger.log(Level.SEVERE, "failed to update novinar_meta_inf table: ", e);
+            logger.log(Level.SEVERE, "failed to upgrade to the v3 database schema layout: ", e);
+            try {
+                conn.rollback();
+            } catch (SQLException re) {
+                printSQLException(re);
+            }
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                printSQLException(e);
+            }
+            pc.close();
         }
+    }
+
 
-        // is set to 1 when the news item is moved to the trash bin, but is not yet a
-        // candidate for the final removal from the database
-        String sqlAlter = "ALTER TABLE news_item ADD COLUMN is_trash SMALLINT DEFAULT 0";
-        try (PreparedStatement ps = conn.prepareStatement(sqlAlter)) {
-            ps.execute();
+    /**
+     * Upgrade database schema from v3 to v4.
+     *
+     * <p>
+     * Items are identified by the RSS <tt>guid</tt> or the Atom <tt>id</tt>
+     * within their channel, the link is only the fallback. Adds:
+     * <ul>
+     * <li><tt>guid</tt> column to the <tt>news_item</tt> table</li>
+     * <li>index on <tt>(guid, channel_id)</tt> for the item lookups</li>
+     * </ul>
+     *
+     * <p>
+     * The same link may now appear in several channels, or for several items
+     * of a channel with different GUIDs: the unique constraint on
+     * <tt>link</tt> is replaced by an ordinary index. Existing items get their
+     * GUID on the first update.
+     */
+    public void upgradeSchema_v3_v4()
+    {
+        PooledConnection pc = checkout();
+        Connection conn = pc.getConnection();
+
+        try {
+            conn.setAutoCommit(false);
+            try (Statement s = conn.createStatement()) {
+                s.execute("ALTER TABLE news_item ADD COLUMN guid VARCHAR(2048)");
+                s.execute("CREATE INDEX news_item_guid_idx ON news_item(guid, channel_id)");
+                boolean uniqueLink;
+                try (ResultSet rs = s.executeQuery("SELECT constraintname FROM sys.sysconstraints"
+                                                   + " WHERE constraintname='NEWS_ITEM_LINK_UQ'")) {
+                    uniqueLink = rs.next();
+                }
+                // v2 created the index instead of the constraint
+                // if there were duplicate links
+                if (uniqueLink) {
+                    s.execute("ALTER TABLE news_item DROP CONSTRAINT news_item_link_uq");
+                    s.execute("CREATE INDEX news_item_link_idx ON news_item(link)");
+                }
+                s.executeUpdate("UPDATE novinar_meta_inf SET schema_version=4");
+            }
+            conn.commit();
+            logger.severe("finished upgrade to the v4 database schema layout");
         } catch (SQLException e) {
-            logger.log(Level.SEVERE, "failed to alter news_item table: ", e);
+            logger.log(Level.SEVERE, "failed to upgrade to the v4 database schema layout: ", e);
+            try {
+                conn.rollback();
+            } catch (SQLException re) {
+                printSQLException(re);
+            }
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                printSQLException(e);
+            }
+            pc.close();
         }
+    }
 
-        logger.severe("finished upgrade to the v1 database schema layout");
+
+    /**
+     * Upgrade database schema from v4 to v5.
+     *
+     * <p>
+     * Items without a GUID are identified by their canonical links, see
+     * LinkCanonicalizer. The <tt>link</tt> column keeps the original link for
+     * display. Adds:
+     * <ul>
+     * <li><tt>link_key</tt> column with the canonical link, filled in for the
+     * existing items</li>
+     * <li>index on <tt>(link_key, channel_id)</tt> that replaces the index on
+     * <tt>link</tt></li>
+     * </ul>
+     */
+    public void upgradeSchema_v4_v5()
+    {
+        PooledConnection pc = checkout();
+        Connection conn = pc.getConnection();
+        LinkCanonicalizer canonicalizer = LinkCanonicalizer.fromSystemProperties();
+
+        try {
+            conn.setAutoCommit(false);
+            try (Statement s = conn.createStatement()) {
+                s.execute("ALTER TABLE news_item ADD COLUMN link_key VARCHAR(2048)");
+                int count = 0;
+                try (PreparedStatement ps = conn.prepareStatement("UPDATE news_item SET link_key=?"
+                                                                  + " WHERE news_item_id=?");
+                     ResultSet rs = s.executeQuery("SELECT news_item_id, link FROM news_item"
+                                                   + " WHERE link IS NOT NULL")) {
+                    while (rs.next()) {
+                        ps.setString(1, canonicalizer.canonicalize(rs.getString(2)));
+                        ps.setInt(2, rs.getInt(1));
+                        ps.addBatch();
+                        if (++count % 1000 == 0) {
+                            ps.executeBatch();
+                        }
+                    }
+                    ps.executeBatch();
+                }
+                s.execute("CREATE INDEX news_item_link_key_idx ON news_item(link_key, channel_id)");
+                s.execute("DROP INDEX news_item_link_idx");
+                s.executeUpdate("UPDATE novinar_meta_inf SET schema_version=5");
+                logger.info("canonical links of " + count + " news items stored");
+            }
+            conn.commit();
+            logger.severe("finished upgrade to the v5 database schema layout");
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "failed to upgrade to the v5 database schema layout: ", e);
+            try {
+                conn.rollback();
+            } catch (SQLException re) {
+                printSQLException(re);
+            }
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                printSQLException(e);
+            }
+            pc.close();
+        }
     }
 
 
+    /**
+     * Upgrade database schema from v5 to v6.
+     *
+     * <p>
+     * News items are listed newest first a page at a time, continuing from
+     * the <tt>(date, news_item_id)</tt> of the last item shown. Adds indexes
+     * that return the items in this order without sorting them:
+     * <ul>
+     * <li>on <tt>(date DESC, news_item_id DESC)</tt> for folders and the trash
+     * bin</li>
+     * <li>on <tt>(channel_id, is_trash, is_removed, date DESC, news_item_id
+     * DESC)</tt> for a single channel, it replaces the v2 channel index</li>
+     * </ul>
+     */
+    public void upgradeSchema_v5_v6()
+    {
+        PooledConnection pc = checkout();
+        Connection conn = pc.getConnection();
+
+        try {
+            conn.setAutoCommit(false);
+            try (Statement s = conn.createStatement()) {
+                s.execute("CREATE INDEX news_item_date_idx ON news_item(date DESC, news_item_id DESC)");
+                s.execute("CREATE INDEX news_item_channel_date_idx ON news_item(channel_id, is_trash,"
+                          + " is_removed, date DESC, news_item_id DESC)");
+                s.execute("DROP INDEX news_item_channel_idx");
+                s.executeUpdate("UPDATE novinar_meta_inf SET schema_version=6");
+            }
+            conn.commit();
+            logger.severe("finished upgrade to the v6 database schema layout");
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "failed to upgrade to the v6 database schema layout: ", e);
+            try {
+                conn.rollback();
+            } catch (SQLException re) {
+                printSQLException(re);
+            }
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                printSQLException(e);
+            }
+            pc.close();
+        }
+    }
+
 
     /**
      * Prints details of an SQLException chain to Logger.
@@ -258,6 +618,10 @@ public class Backend
      */
     public void close()
     {
+        if (pool != null) {
+            pool.close();
+        }
+
 	try {
 	    // the shutdown=true attribute shuts down Derby
 	    DriverManager.getConnection("jdbc:derby:;shutdown=true");
@@ -280,16 +644,6 @@ public class Backend
 		printSQLException(se);
 	    }
 	}
-
-	//Connection
-	try {
-	    if (conn != null) {
-		conn.close();
-		conn = null;
-	    }
-	} catch (SQLException sqle) {
-	    printSQLException(sqle);
-	}
     }
 
 
@@ -0,0 +1,194 @@
+package org.bb.vityok.novinar.db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** Bounded pool of connections to the embedded database.
+ *
+ * <p>The FeedReader workers, the FX thread and the lazily loaded item
+ * descriptions used to share one Connection: all statements queued on
+ * its monitor and the transaction of one thread included the writes
+ * of the others. Now a connection is checked out for a unit of work
+ * and returned once it is over, see PooledConnection. A thread never
+ * owns a connection past that, so executors that run every task in a
+ * thread of its own reuse the same few connections.
+ *
+ * <p>At most maxSize connections are open. When all of them are
+ * checked out the caller waits for one to come back, up to
+ * CHECKOUT_TIMEOUT seconds. The connection returned last is handed
+ * out first, so that the statements cached on it stay warm. An idle
+ * connection is validated before it is handed out and replaced if it
+ * is broken.
+ *
+ * <p>Every connection has its own StatementCache for the constant
+ * queries of the DAO code, it goes in and out of the pool together
+ * with the connection.
+ */
+class ConnectionPool
+{
+    /** Number of connections open at most by default. */
+    public static final int DEFAULT_MAX_SIZE = 8;
+
+    /** Seconds to wait for the connection validation. */
+    public static final int VALIDATION_TIMEOUT = 5;
+
+    /** Seconds to wait for a connection when all are checked out. */
+    public static final int CHECKOUT_TIMEOUT = 60;
+
+    private final String url;
+    private final Logger logger;
+    private final int maxSize;
+    // idle connections, the one returned last comes first
+    private final Deque<StatementCache> idle = new ArrayDeque<>();
+    private int open = 0;
+    private boolean closed = false;
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+
+    ConnectionPool(String url, int maxSize, Logger logger)
+    {
+        this.url = url;
+        this.maxSize = Math.max(1, maxSize);
+        this.logger = logger;
+    }
+
+    /** @return connection that must be closed to return it to the
+     * pool */
+    PooledConnection checkout()
+        throws SQLException
+    {
+        return new PooledConnection(this, acquire());
+    }
+
+    private synchronized StatementCache acquire()
+        throws SQLException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(CHECKOUT_TIMEOUT);
+        while (true) {
+            if (closed) {
+                throw new SQLException("database connection pool is closed");
+            }
+            StatementCache cache = idle.pollFirst();
+            if (cache != null) {
+                if (isValid(cache.getConnection())) {
+                    return cache;
+                }
+                logger.warning("replacing broken database connection");
+                open--;
+                close(cache);
+                continue;
+            }
+            if (open < maxSize) {
+                cache = new StatementCache(DriverManager.getConnection(url), statementHits, statementMisses);
+                open++;
+                logger.fine("opened database connection, " + open + " open");
+                return cache;
+            }
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                throw new SQLException("all " + maxSize + " database connections are busy for "
+                                       + CHECKOUT_TIMEOUT + " seconds");
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("interrupted while waiting for a database connection", ie);
+            }
+        }
+    }
+
+    /** Take the connection back, called by PooledConnection.close(). */
+    synchronized void release(StatementCache cache)
+    {
+        if (closed) {
+            open--;
+            close(cache);
+            return;
+        }
+        try {
+            Connection conn = cache.getConnection();
+            // the next user gets a connection without a pending
+            // transaction
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException sqle) {
+            logger.log(Level.WARNING, "dropping database connection that failed to reset", sqle);
+            open--;
+            close(cache);
+            notify();
+            return;
+        }
+        idle.offerFirst(cache);
+        notify();
+    }
+
+    private boolean isValid(Connection conn)
+    {
+        try {
+            return conn.isValid(VALIDATION_TIMEOUT);
+        } catch (SQLException sqle) {
+            return false;
+        }
+    }
+
+    /** @return number of open connections, idle or checked out */
+    synchronized int size()
+    {
+        return open;
+    }
+
+    /** @return number of times a cached statement was reused */
+    long getStatementHits()
+    {
+        return statementHits.get();
+    }
+
+    /** @return number of times a statement had to be prepared */
+    long getStatementMisses()
+    {
+        return statementMisses.get();
+    }
+
+    /** Close all idle connections, the ones checked out are closed
+     * when they are returned. Uncommitted work is rolled back. */
+    synchronized void close()
+    {
+        closed = true;
+        int count = idle.size();
+        while (!idle.isEmpty()) {
+            close(idle.pollFirst());
+        }
+        open -= count;
+        notifyAll();
+        logger.info("closed " + count + " database connections, " + open + " still checked out");
+    }
+
+    private void close(StatementCache cache)
+    {
+        cache.clear();
+        Connection conn = cache.getConnection();
+        try {
+            if (!conn.isClosed()) {
+                if (!conn.getAutoCommit()) {
+                    conn.rollback();
+                }
+                conn.close();
+            }
+        } catch (SQLException sqle) {
+            logger.log(Level.WARNING, "failed to close database connection", sqle);
+        }
+    }
+}
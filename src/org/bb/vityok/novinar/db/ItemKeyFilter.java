@@ -0,0 +1,107 @@
+package org.bb.vityok.novinar.db;
+
+/** Bloom filter of the GUIDs and links of the items stored for a
+ * single channel.
+ *
+ * <p>Most items of a fetch are either all known or all new, asking
+ * the database about every one of them is wasted work for the new
+ * ones. The filter never misses a key that was added, but may report
+ * a key that wasn't: an item it doesn't contain is definitely new and
+ * goes straight to the insert, only the possible hits are looked up.
+ *
+ * <p>The filter is sized for twice the number of keys it is built
+ * with and FALSE_POSITIVE_RATE. Once more keys are added it reports
+ * itself full and has to be built again. Keys of the deleted items
+ * are never removed, they only cost an extra lookup.
+ *
+ * <p>Not thread-safe, the items of a channel are stored by one thread
+ * at a time.
+ */
+class ItemKeyFilter
+{
+    /** Expected share of unknown keys the filter reports as known. */
+    public static final double FALSE_POSITIVE_RATE = 0.01;
+
+    /** Smallest number of keys a filter is sized for. */
+    public static final int MIN_CAPACITY = 1024;
+
+    private final long[] bits;
+    private final int hashes;
+    private final int capacity;
+    private volatile int keys = 0;
+
+    /** @param expectedKeys number of keys the filter is built with */
+    ItemKeyFilter(int expectedKeys)
+    {
+        capacity = Math.max(MIN_CAPACITY, 2 * expectedKeys);
+        double ln2 = Math.log(2);
+        long size = (long) Math.ceil(-capacity * Math.log(FALSE_POSITIVE_RATE) / (ln2 * ln2));
+        bits = new long[(int) ((size + 63) / 64)];
+        hashes = Math.max(1, (int) Math.round(ln2 * bits.length * 64 / capacity));
+    }
+
+    void add(String key)
+    {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        long size = bits.length * 64L;
+        for (int i = 0; i < hashes; i++) {
+            long bit = ((h1 + i * h2) & 0xFFFFFFFFL) % size;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        keys++;
+    }
+
+    /** @return false if the key was definitely never added */
+    boolean mightContain(String key)
+    {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        long size = bits.length * 64L;
+        for (int i = 0; i < hashes; i++) {
+            long bit = ((h1 + i * h2) & 0xFFFFFFFFL) % size;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return true once the false positive rate exceeds the one the
+     * filter was sized for */
+    boolean isFull()
+    {
+        return keys > capacity;
+    }
+
+    /** @return number of keys added so far */
+    int getKeyCount()
+    {
+        return keys;
+    }
+
+    /** @return memory used by the bits of the filter */
+    long getMemoryBytes()
+    {
+        return bits.length * 8L;
+    }
+
+    /** 64-bit FNV-1a of the key characters with the MurmurHash3
+     * finalizer to spread the bits. */
+    private static long hash(String key)
+    {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
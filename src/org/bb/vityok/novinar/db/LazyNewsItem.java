@@ -6,7 +6,6 @@ import java.util.Calendar;
 
 import java.util.logging.Level;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -47,16 +46,15 @@ public class LazyNewsItem extends NewsItem
      * garbage collection once it is no longer used.
      */
     public String getDescription() {
-	Connection conn = dbend.getConnection();
-
         String sql = "SELECT description FROM news_item WHERE news_item_id=?";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (PooledConnection pc = dbend.checkout()) {
+            PreparedStatement ps = pc.prepareStatement(sql);
             ps.setInt(1, Integer.valueOf(getNewsItemId()));
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                return rs.getString("description");
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getString("description");
+                }
             }
-
         } catch (SQLException e) {
             dbend.getLogger().log(Level.SEVERE, "failed to load description for NewsItem: " + this, e);
         }
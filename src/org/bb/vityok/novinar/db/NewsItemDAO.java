@@ -6,10 +6,22 @@ import java.io.ByteArrayOutputStream;
 
 import java.nio.charset.StandardCharsets;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 import java.time.Instant;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.LinkedList;
+import java.util.Map;
+
+import java.util.concurrent.ConcurrentHashMap;
 
 import java.util.logging.Level;
 
@@ -20,6 +32,7 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 
 import org.bb.vityok.novinar.core.Channel;
+import org.bb.vityok.novinar.core.LinkCanonicalizer;
 import org.bb.vityok.novinar.core.NewsItem;
 
 
@@ -32,67 +45,416 @@ import org.bb.vityok.novinar.core.NewsItem;
 public class NewsItemDAO
 {
     private Backend dbend;
+    private LinkCanonicalizer canonicalizer;
 
     protected NewsItemDAO(Backend dbend)
     {
         this.dbend = dbend;
+        this.canonicalizer = LinkCanonicalizer.fromSystemProperties();
     }
 
     public void insertOrUpdateItem(Channel chan, NewsItem item)
 	throws Exception
     {
-        Connection conn = dbend.getConnection();
-
-        // truncate the description if it exceeds maximum possible description size
-        String desc = item.getDescription();
-        if (desc !=null && desc.length() >= Backend.DESCRIPTION_MAX_LENGTH) {
-            item.setDescription(desc.substring(0, Backend.DESCRIPTION_MAX_LENGTH - 5 ));
-        }
-
-        // check if such item already exists in the database before
-        // insertion, update the item if it is not removed otherwise
-        String sqlSel = "SELECT link, news_item_id, is_removed, is_trash FROM news_item WHERE link=?";
-        try (PreparedStatement cs = conn.prepareStatement(sqlSel)) {
-            cs.setString(1, item.getLink());
-            ResultSet rscs = cs.executeQuery();
-            boolean alreadyExists = rscs.next();
-            if (alreadyExists) {
-                int newsItemId = rscs.getInt("news_item_id");
-                boolean isRemoved = (rscs.getInt("is_removed") == 1);
-                boolean isTrash = (rscs.getInt("is_trash") == 1);
-                if (!(isRemoved || isTrash)) {
-                    String sqlUp = "UPDATE news_item SET "
-                        + " title=?, description=?, creator=?, date=?, subject=? "
-                        + " WHERE news_item_id=?";
-                    try (PreparedStatement ps = conn.prepareStatement(sqlUp)) {
-                        ps.setString(1, item.getTitle());
-                        ps.setString(2, item.getDescription());
-                        ps.setString(3, item.getCreator());
-                        ps.setTimestamp(4, new Timestamp(item.getDateCalendar().toEpochMilli()));
-                        ps.setString(5, item.getSubject());
-                        ps.setInt(6, newsItemId);
-                        ps.executeUpdate();
-                        dbend.getLogger().fine("updated existing item: " + item.getTitle());
+        insertOrUpdateItems(chan, Collections.singletonList(item));
+    } // insertOrUpdateItem
+
+
+    private static final String SQL_UPDATE = "UPDATE news_item SET "
+        + " title=?, link=?, link_key=?, guid=?, description=?, creator=?, date=?, subject=?,"
+        + " content_hash=? WHERE news_item_id=?";
+
+    private static final String SQL_INSERT = "INSERT INTO news_item(title, link, link_key, guid,"
+        + " description, creator, date, subject, channel_id, content_hash)"
+        + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /** Lookup of the items by GUID or link, the column is appended
+     * together with the IN list. Derby prefers the channel index for
+     * these queries and reads every item of the channel, so the index
+     * of the column is forced instead. */
+    private static final String SQL_LOOKUP = "SELECT news_item_id, link_key, guid, is_removed, is_trash,"
+        + " content_hash FROM news_item --DERBY-PROPERTIES index=news_item_%s_idx\n"
+        + " WHERE channel_id=? AND %s";
+
+    /** Hash of the item fields that are stored in the database,
+     * compared to skip updates that wouldn't change anything.
+     *
+     * @return 32 hex digits
+     */
+    public static String contentHash(NewsItem item)
+    {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(nsae);
+        }
+        String[] fields = {
+            item.getTitle(),
+            item.getDescription(),
+            item.getCreator(),
+            (item.getDateCalendar() == null) ? null : Long.toString(item.getDateCalendar().toEpochMilli()),
+            item.getSubject()
+        };
+        for (String field : fields) {
+            // tell NULL from the empty string and keep the fields
+            // apart
+            if (field != null) {
+                md.update((byte) 1);
+                md.update(field.getBytes(StandardCharsets.UTF_8));
+            }
+            md.update((byte) 0);
+        }
+        byte[] digest = md.digest();
+        StringBuilder sb = new StringBuilder(32);
+        for (int i = 0; i < 16; i++) {
+            sb.append(Character.forDigit((digest[i] >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(digest[i] & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+
+    /** Maximum number of GUIDs or links looked up by a single
+     * query. Derby stops probing the index and scans the whole table
+     * for much longer IN lists. */
+    public static final int LOOKUP_CHUNK_SIZE = 100;
+
+    /** Sizes of the lookup queries. Shorter lists are padded to the
+     * next size, so that only a few distinct queries get cached. */
+    private static final int[] LOOKUP_SIZES = { 10, 50, LOOKUP_CHUNK_SIZE };
+
+    /** Items of a channel are stored by one thread at a time, so that
+     * the same item fetched twice is not inserted twice. */
+    private final Map<Integer, Object> channelLocks = new ConcurrentHashMap<>();
+
+    /** Keys of the items stored for the channels, loaded on the
+     * first store into the channel. */
+    private final Map<Integer, ItemKeyFilter> knownKeys = new ConcurrentHashMap<>();
+
+    /** Stored state of an item found by its GUID or link. */
+    private static class ExistingItem
+    {
+        final int newsItemId;
+        final String guid;
+        final String linkKey;
+        // removed and trashed items are never updated
+        final boolean locked;
+        final String contentHash;
+
+        ExistingItem(ResultSet rs)
+            throws SQLException
+        {
+            this.newsItemId = rs.getInt("news_item_id");
+            this.guid = rs.getString("guid");
+            this.linkKey = rs.getString("link_key");
+            this.locked = (rs.getInt("is_removed") == 1) || (rs.getInt("is_trash") == 1);
+            this.contentHash = rs.getString("content_hash");
+        }
+    }
+
+    /** @return key that tells the items of a channel apart: the GUID
+     * if the feed provides one, the canonical link otherwise */
+    private static String itemKey(NewsItem item, String linkKey)
+    {
+        return (item.getGuid() != null) ? "g:" + item.getGuid() : "l:" + linkKey;
+    }
+
+    /** @return keys identifying the item in the ItemKeyFilter */
+    private static List<String> filterKeys(String guid, String link)
+    {
+        List<String> keys = new ArrayList<>(2);
+        if (guid != null) {
+            keys.add("g:" + guid);
+        }
+        if (link != null) {
+            keys.add("l:" + link);
+        }
+        return keys;
+    }
+
+    /** @return filter of the keys of the items stored for the channel,
+     * built from the database if there is none yet */
+    private ItemKeyFilter getKnownKeys(PooledConnection pc, Channel chan)
+        throws SQLException
+    {
+        ItemKeyFilter filter = knownKeys.get(chan.getChannelId());
+        if (filter != null) {
+            return filter;
+        }
+        List<String> keys = new ArrayList<>();
+        PreparedStatement ps = pc.prepareStatement("SELECT guid, link_key FROM news_item WHERE channel_id=?");
+        ps.setInt(1, chan.getChannelId());
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                keys.addAll(filterKeys(rs.getString(1), rs.getString(2)));
+            }
+        }
+        filter = new ItemKeyFilter(keys.size());
+        for (String key : keys) {
+            filter.add(key);
+        }
+        knownKeys.put(chan.getChannelId(), filter);
+        dbend.getLogger().info("loaded " + keys.size() + " known item keys for " + chan
+                               + ", " + filter.getMemoryBytes() + " bytes");
+        return filter;
+    }
+
+    /** @return number of known item keys of the channel kept in memory,
+     * 0 until the first items are stored */
+    public int getKnownKeyCount(Channel chan)
+    {
+        ItemKeyFilter filter = knownKeys.get(chan.getChannelId());
+        return (filter == null) ? 0 : filter.getKeyCount();
+    }
+
+    /** @return memory used by the known item keys of the channel */
+    public long getKnownKeyBytes(Channel chan)
+    {
+        ItemKeyFilter filter = knownKeys.get(chan.getChannelId());
+        return (filter == null) ? 0 : filter.getMemoryBytes();
+    }
+
+    /** @return memory used by the known item keys of all channels */
+    public long getKnownKeyBytes()
+    {
+        long bytes = 0;
+        for (ItemKeyFilter filter : knownKeys.values()) {
+            bytes += filter.getMemoryBytes();
+        }
+        return bytes;
+    }
+
+    /** Stores the items of a single channel, inserting the new ones
+     * and updating the ones that exist already.
+     *
+     * <p>Items are identified by their GUIDs within the channel. Items
+     * without a GUID, and the items stored before their GUIDs were
+     * known, are identified by the canonical link, the original link
+     * is stored for display. Items missing from the ItemKeyFilter of
+     * the channel are new and inserted right away, the rest are found
+     * by indexed lookups of up to LOOKUP_CHUNK_SIZE GUIDs or links.
+     * Inserts and updates are sent as JDBC batches and the whole batch
+     * is committed in one transaction, so Derby forces its log once
+     * instead of once per item. Items removed or moved to the trash
+     * are not updated, and neither are the items whose content hash
+     * hasn't changed.
+     *
+     * <p>The outcome is counted in Channel.countStoredItems.
+     */
+    public void insertOrUpdateItems(Channel chan, List<NewsItem> items)
+        throws Exception
+    {
+        // the same item might appear twice in a feed, the last one wins
+        Map<String, NewsItem> byKey = new LinkedHashMap<>();
+        Map<NewsItem, String> linkKeys = new IdentityHashMap<>();
+        for (NewsItem item : items) {
+            String desc = item.getDescription();
+            if (desc != null && desc.length() >= Backend.DESCRIPTION_MAX_LENGTH) {
+                item.setDescription(desc.substring(0, Backend.DESCRIPTION_MAX_LENGTH - 5));
+            }
+            String linkKey = canonicalizer.canonicalize(item.getLink());
+            linkKeys.put(item, linkKey);
+            byKey.put(itemKey(item, linkKey), item);
+        }
+        if (byKey.isEmpty()) {
+            return;
+        }
+
+        Object lock = channelLocks.computeIfAbsent(chan.getChannelId(), id -> new Object());
+        synchronized (lock) {
+            try (PooledConnection pc = dbend.checkout()) {
+                storeItems(pc, chan, byKey.values(), linkKeys);
+            }
+        }
+    }
+
+    /** @param linkKeys canonical links of the items */
+    private void storeItems(PooledConnection pc, Channel chan, Collection<NewsItem> items,
+                            Map<NewsItem, String> linkKeys)
+        throws Exception
+    {
+        Connection conn = pc.getConnection();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            ItemKeyFilter filter = getKnownKeys(pc, chan);
+            List<NewsItem> candidates = new ArrayList<>();
+            for (NewsItem item : items) {
+                for (String key : filterKeys(item.getGuid(), linkKeys.get(item))) {
+                    if (filter.mightContain(key)) {
+                        candidates.add(item);
+                        break;
                     }
                 }
-            } else {
-                String sqlIns = "INSERT INTO news_item(title, link, description, " +
-                    " creator, date, subject, channel_id)" +
-                    " VALUES (?, ?, ?, ?, ?, ?, ?)";
-                try (PreparedStatement ps = conn.prepareStatement(sqlIns)) {
-                    ps.setString(1, item.getTitle());
-                    ps.setString(2, item.getLink());
-                    ps.setString(3, item.getDescription());
-                    ps.setString(4, item.getCreator());
-                    ps.setTimestamp(5, Timestamp.from(item.getDateCalendar()));
-                    ps.setString(6, item.getSubject());
-                    ps.setInt(7, Integer.valueOf(chan.getChannelId()));
-                    ps.executeUpdate();
-                    dbend.getLogger().fine("inserted a new item: " + item.getTitle());
+            }
+            Map<NewsItem, ExistingItem> existing = findExistingItems(pc, chan, candidates, linkKeys);
+            List<String> newKeys = new ArrayList<>();
+
+            int inserted = 0;
+            int updated = 0;
+            int unchanged = 0;
+            PreparedStatement ups = pc.prepareStatement(SQL_UPDATE);
+            PreparedStatement ins = pc.prepareStatement(SQL_INSERT);
+            for (NewsItem item : items) {
+                ExistingItem known = existing.get(item);
+                if (known != null && known.locked) {
+                    continue;
                 }
+                String hash = contentHash(item);
+                if (known == null) {
+                    ins.setString(1, item.getTitle());
+                    ins.setString(2, item.getLink());
+                    ins.setString(3, linkKeys.get(item));
+                    ins.setString(4, item.getGuid());
+                    ins.setString(5, item.getDescription());
+                    ins.setString(6, item.getCreator());
+                    ins.setTimestamp(7, Timestamp.from(item.getDateCalendar()));
+                    ins.setString(8, item.getSubject());
+                    ins.setInt(9, chan.getChannelId());
+                    ins.setString(10, hash);
+                    ins.addBatch();
+                    newKeys.addAll(filterKeys(item.getGuid(), linkKeys.get(item)));
+                    inserted++;
+                } else if (hash.equals(known.contentHash)
+                           && (item.getGuid() == null || item.getGuid().equals(known.guid))) {
+                    // a new link alone is not worth an update
+                    unchanged++;
+                } else {
+                    ups.setString(1, item.getTitle());
+                    ups.setString(2, item.getLink());
+                    ups.setString(3, linkKeys.get(item));
+                    ups.setString(4, (item.getGuid() != null) ? item.getGuid() : known.guid);
+                    ups.setString(5, item.getDescription());
+                    ups.setString(6, item.getCreator());
+                    ups.setTimestamp(7, Timestamp.from(item.getDateCalendar()));
+                    ups.setString(8, item.getSubject());
+                    ups.setString(9, hash);
+                    ups.setInt(10, known.newsItemId);
+                    ups.addBatch();
+                    // the item might have got a GUID or another link
+                    List<String> keys = filterKeys(item.getGuid(), linkKeys.get(item));
+                    keys.removeAll(filterKeys(known.guid, known.linkKey));
+                    newKeys.addAll(keys);
+                    updated++;
+                }
+            }
+            if (inserted > 0) {
+                ins.executeBatch();
+            }
+            if (updated > 0) {
+                ups.executeBatch();
             }
+            conn.commit();
+            for (String key : newKeys) {
+                filter.add(key);
+            }
+            if (filter.isFull()) {
+                // built again with more room on the next store
+                knownKeys.remove(chan.getChannelId());
+            }
+            chan.countStoredItems(inserted, updated, unchanged);
+            dbend.getLogger().fine("stored a batch of " + items.size() + " items for " + chan
+                                   + ": " + inserted + " inserted, " + updated + " updated, "
+                                   + unchanged + " unchanged, "
+                                   + (items.size() - candidates.size()) + " not looked up");
+        } catch (Exception e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
         }
-    } // insertOrUpdateItem
+    }
+
+    /** Looks up the given items of the channel in the database.
+     *
+     * <p>Items with a GUID are looked up by the GUID first. The rest
+     * are looked up by the canonical link, items with a GUID match
+     * only the stored items that have no GUID yet.
+     *
+     * @return stored state of the existing items
+     */
+    private Map<NewsItem, ExistingItem> findExistingItems(PooledConnection pc, Channel chan,
+                                                          Collection<NewsItem> items,
+                                                          Map<NewsItem, String> linkKeys)
+        throws SQLException
+    {
+        Map<NewsItem, ExistingItem> existing = new IdentityHashMap<>();
+
+        Map<String, NewsItem> byGuid = new HashMap<>();
+        for (NewsItem item : items) {
+            if (item.getGuid() != null) {
+                byGuid.put(item.getGuid(), item);
+            }
+        }
+        for (ExistingItem stored : lookup(pc, chan, "guid", byGuid.keySet()).values()) {
+            existing.put(byGuid.get(stored.guid), stored);
+        }
+
+        Map<String, List<NewsItem>> byLink = new HashMap<>();
+        for (NewsItem item : items) {
+            String linkKey = linkKeys.get(item);
+            if (!existing.containsKey(item) && linkKey != null) {
+                byLink.computeIfAbsent(linkKey, link -> new ArrayList<>()).add(item);
+            }
+        }
+        for (Map.Entry<String, ExistingItem> entry : lookup(pc, chan, "link_key", byLink.keySet()).entrySet()) {
+            ExistingItem stored = entry.getValue();
+            for (NewsItem item : byLink.get(entry.getKey())) {
+                // an item stored with another GUID is a different item
+                if (item.getGuid() == null || stored.guid == null) {
+                    existing.put(item, stored);
+                    break;
+                }
+            }
+        }
+        return existing;
+    }
+
+    /** Looks up the stored items of the channel by the values of the
+     * given column.
+     *
+     * @return stored state of the found items by the column value
+     */
+    private Map<String, ExistingItem> lookup(PooledConnection pc, Channel chan, String column,
+                                             Collection<String> values)
+        throws SQLException
+    {
+        Map<String, ExistingItem> found = new HashMap<>();
+        List<String> all = new ArrayList<>(values);
+        for (int from = 0; from < all.size(); from += LOOKUP_CHUNK_SIZE) {
+            List<String> chunk = all.subList(from, Math.min(all.size(), from + LOOKUP_CHUNK_SIZE));
+            int size = LOOKUP_CHUNK_SIZE;
+            for (int candidate : LOOKUP_SIZES) {
+                if (candidate >= chunk.size()) {
+                    size = candidate;
+                    break;
+                }
+            }
+            String sqlSel = String.format(SQL_LOOKUP, column, column)
+                + " IN (" + String.join(", ", Collections.nCopies(size, "?")) + ")";
+            PreparedStatement ps = pc.prepareStatement(sqlSel);
+            ps.setInt(1, chan.getChannelId());
+            for (int i = 0; i < size; i++) {
+                // repeating the last value doesn't change the result
+                ps.setString(i + 2, chunk.get(Math.min(i, chunk.size() - 1)));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ExistingItem stored = new ExistingItem(rs);
+                    String value = rs.getString(column);
+                    // prefer the items without a GUID when looking up
+                    // links, those are the ones still identified by it
+                    ExistingItem other = found.get(value);
+                    if (other == null || (other.guid != null && stored.guid == null)) {
+                        found.put(value, stored);
+                    }
+                }
+            }
+        }
+        return found;
+    }
 
 
     /** Returns a list of items for the given channel.
@@ -123,7 +485,9 @@ public class NewsItemDAO
 	    item.setLink(rs.getString("link"));
 	    // item.setDescription(rs.getString("description"));
 	    item.setCreator(rs.getString("creator"));
-	    item.setDateCalendar(Instant.ofEpochMilli(rs.getTimestamp("date").getTime()));
+	    // keep the nanoseconds, the item might be used to continue
+	    // a page of items
+	    item.setDateCalendar(rs.getTimestamp("date").toInstant());
 	    item.setSubject(rs.getString("subject"));
 	    item.setIsRead(rs.getInt("is_read") == 1 );
 	    item.setChannelId(rs.getInt("channel_id"));
@@ -138,15 +502,14 @@ public class NewsItemDAO
     public List<NewsItem> getNewsItemsInTrash()
 	throws Exception
     {
-	Connection conn = dbend.getConnection();
         String sql = "SELECT news_item_id, " +
             " title, link, creator, date, subject, is_read, channel_id " +
             " FROM news_item " +
             " WHERE is_trash=1 AND is_removed=0 " +
             " ORDER BY date";
 
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ResultSet rs = ps.executeQuery();
+        try (PooledConnection pc = dbend.checkout();
+             ResultSet rs = pc.prepareStatement(sql).executeQuery()) {
 	    return convertNewsItemsRS(rs);
         }
     }
@@ -162,7 +525,6 @@ public class NewsItemDAO
     public List<NewsItem> getNewsItemByChannels(List<Channel> channels)
 	throws Exception
     {
-	Connection conn = dbend.getConnection();
         List<String> channelIds = new LinkedList<String>();
 
         for (Channel chan : channels) {
@@ -181,13 +543,146 @@ public class NewsItemDAO
             " AND is_removed=0 AND is_trash=0 " +
             " ORDER BY date";
 
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (PooledConnection pc = dbend.checkout();
+             PreparedStatement ps = pc.getConnection().prepareStatement(sql)) {
             ResultSet rs = ps.executeQuery();
 	    return convertNewsItemsRS(rs);
         }
     }
 
 
+    /** Loads a page of news items of the given channels, newest
+     * first, except for their descriptions.
+     *
+     * <p>Items were not removed nor moved to the trash. Pages are
+     * continued from the last item of the previous page rather than
+     * counted from the beginning, so every page costs the same no
+     * matter how far the user has scrolled.
+     *
+     * @param after last item of the previous page, null for the first
+     * page
+     * @return at most pageSize items, fewer on the last page
+     */
+    public List<NewsItem> getNewsItemPage(List<Channel> channels, NewsItem after, int pageSize)
+        throws Exception
+    {
+        if (channels.isEmpty()) {
+            return new LinkedList<NewsItem>();
+        }
+        return queryPage(" channel_id IN (" + channelIds(channels) + ")"
+                         + " AND is_removed=0 AND is_trash=0", after, pageSize);
+    }
+
+    /** Loads a page of news items in the trash bin, newest first.
+     *
+     * @see #getNewsItemPage
+     */
+    public List<NewsItem> getNewsItemsInTrashPage(NewsItem after, int pageSize)
+        throws Exception
+    {
+        return queryPage(" is_trash=1 AND is_removed=0", after, pageSize);
+    }
+
+    /** @return number of the items getNewsItemPage pages through */
+    public int countNewsItems(List<Channel> channels)
+        throws Exception
+    {
+        if (channels.isEmpty()) {
+            return 0;
+        }
+        String sql = "SELECT COUNT(*) FROM news_item"
+            + " WHERE channel_id IN (" + channelIds(channels) + ")"
+            + " AND is_removed=0 AND is_trash=0";
+        try (PooledConnection pc = dbend.checkout();
+             PreparedStatement ps = pc.getConnection().prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /** @return number of the items in the trash bin */
+    public int countNewsItemsInTrash()
+    {
+        return querySingleInt("SELECT COUNT(*) AS count FROM news_item WHERE is_trash=1 AND is_removed=0");
+    }
+
+    /** Date limit of the first page of items. */
+    private static final Timestamp LAST_TIMESTAMP = Timestamp.valueOf("9999-12-31 23:59:59.999999999");
+
+    private static String channelIds(List<Channel> channels)
+    {
+        List<String> channelIds = new LinkedList<String>();
+        for (Channel chan : channels) {
+            channelIds.add(Integer.toString(chan.getChannelId()));
+        }
+        return String.join(", ", channelIds);
+    }
+
+    /** Items matching the condition ordered by (date, news_item_id),
+     * newest first, that follow the given item. */
+    private List<NewsItem> queryPage(String condition, NewsItem after, int pageSize)
+        throws Exception
+    {
+        // the date limit lets Derby read the items from the date
+        // index in order, instead of sorting all of them, even for the
+        // first page
+        String sql = "SELECT news_item_id, " +
+            " title, link, creator, date, subject, is_read, channel_id " +
+            " FROM news_item " +
+            " WHERE " + condition + " AND date <= ?";
+        if (after != null) {
+            sql += " AND (date < ? OR news_item_id < ?)";
+        }
+        sql += " ORDER BY date DESC, news_item_id DESC";
+
+        try (PooledConnection pc = dbend.checkout();
+             PreparedStatement ps = pc.getConnection().prepareStatement(sql)) {
+            ps.setMaxRows(pageSize);
+            if (after != null) {
+                Timestamp ts = Timestamp.from(after.getDateCalendar());
+                ps.setTimestamp(1, ts);
+                ps.setTimestamp(2, ts);
+                ps.setInt(3, after.getNewsItemId());
+            } else {
+                ps.setTimestamp(1, LAST_TIMESTAMP);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                return convertNewsItemsRS(rs);
+            }
+        }
+    }
+
+
+    /** Returns publication timestamps of the newest items of the
+     * given channel, newest first.
+     *
+     * <p>Removed and trashed items are included as well: they still
+     * tell how often the channel publishes.
+     */
+    public List<Instant> getRecentItemDates(Channel chan, int limit)
+        throws Exception
+    {
+        List<Instant> dates = new LinkedList<>();
+
+        String sql = "SELECT date FROM news_item WHERE channel_id=? ORDER BY date DESC";
+        try (PooledConnection pc = dbend.checkout()) {
+            PreparedStatement ps = pc.prepareStatement(sql);
+            ps.setMaxRows(limit);
+            ps.setInt(1, chan.getChannelId());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Timestamp ts = rs.getTimestamp(1);
+                    if (ts != null) {
+                        dates.add(ts.toInstant());
+                    }
+                }
+            }
+        }
+        return dates;
+    }
+
+
     /** Mark the given item as removed in the database.
      *
      * <p>The record remains in the database, but its
@@ -200,74 +695,74 @@ public class NewsItemDAO
     public void removeNewsItem(NewsItem item)
         throws Exception
     {
-	Connection conn = dbend.getConnection();
-
-        try (PreparedStatement ps = conn.prepareStatement("UPDATE news_item SET " +
-                                                          " is_removed=1, description=NULL, title=NULL " +
-                                                          " WHERE news_item_id=?")
-             ) {
-            ps.setInt(1, Integer.valueOf(item.getNewsItemId()));
-            ps.executeUpdate();
-            dbend.getLogger().fine("marked item as removed: " + item.getTitle());
+        try (PooledConnection pc = dbend.checkout()) {
+            removeNewsItem(pc, item);
         }
     }
 
+    private void removeNewsItem(PooledConnection pc, NewsItem item)
+        throws Exception
+    {
+        PreparedStatement ps = pc.prepareStatement("UPDATE news_item SET " +
+                                                   " is_removed=1, description=NULL, title=NULL " +
+                                                   " WHERE news_item_id=?");
+        ps.setInt(1, Integer.valueOf(item.getNewsItemId()));
+        ps.executeUpdate();
+        dbend.getLogger().fine("marked item as removed: " + item.getTitle());
+    }
+
     /** Marks news item as moved to trash if it wasn't before, marks
      * as removed if it was already in the trash bin. */
     public void trashNewsItem(NewsItem item)
         throws Exception
     {
 	boolean isTrashed = false;
-	Connection conn = dbend.getConnection();
 
-        String queryIsTrash = "SELECT is_trash FROM news_item WHERE news_item_id=?";
-        try (PreparedStatement ps = conn.prepareStatement(queryIsTrash)) {
-	    ps.setInt(1, Integer.valueOf(item.getNewsItemId()));
-            ResultSet rs = ps.executeQuery();
-            rs.next();
-	    isTrashed = (rs.getInt(1) == 1);
-	}
+        try (PooledConnection pc = dbend.checkout()) {
+            String queryIsTrash = "SELECT is_trash FROM news_item WHERE news_item_id=?";
+            PreparedStatement qs = pc.prepareStatement(queryIsTrash);
+            qs.setInt(1, Integer.valueOf(item.getNewsItemId()));
+            try (ResultSet rs = qs.executeQuery()) {
+                rs.next();
+                isTrashed = (rs.getInt(1) == 1);
+            }
 
-	if (isTrashed) {
-	    removeNewsItem(item);
-	} else {
-	    try (PreparedStatement ps = conn.prepareStatement("UPDATE news_item SET " +
-							      " is_trash=1 " +
-							      " WHERE news_item_id=?")
-		 ) {
-		ps.setInt(1, Integer.valueOf(item.getNewsItemId()));
-		ps.executeUpdate();
-		dbend.getLogger().fine("marked item as moved to trash: " + item.getTitle());
-	    }
-	}
+            if (isTrashed) {
+                removeNewsItem(pc, item);
+            } else {
+                PreparedStatement ps = pc.prepareStatement("UPDATE news_item SET " +
+                                                           " is_trash=1 " +
+                                                           " WHERE news_item_id=?");
+                ps.setInt(1, Integer.valueOf(item.getNewsItemId()));
+                ps.executeUpdate();
+                dbend.getLogger().fine("marked item as moved to trash: " + item.getTitle());
+            }
+        }
     }
 
 
     public void markItemAsRead(NewsItem item, boolean read)
         throws Exception
     {
-	Connection conn = dbend.getConnection();
-
         String sql = "UPDATE news_item SET " +
             " is_read=? " +
             " WHERE news_item_id=?";
 
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (PooledConnection pc = dbend.checkout()) {
+            PreparedStatement ps = pc.prepareStatement(sql);
             ps.setInt(1, Integer.valueOf(read ? 1 : 0));
             ps.setInt(2, Integer.valueOf(item.getNewsItemId()));
             ps.executeUpdate();
-            dbend.getLogger().fine("marked item as read: " + item.getTitle());
         }
+        dbend.getLogger().fine("marked item as read: " + item.getTitle());
     }
 
 
     private int querySingleInt(String sql) {
-	Connection conn = dbend.getConnection();
         int intValue = -1;
 
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ResultSet rs = ps.executeQuery();
+        try (PooledConnection pc = dbend.checkout();
+             ResultSet rs = pc.prepareStatement(sql).executeQuery()) {
             while (rs.next()) {
                 intValue = rs.getInt(1);
             }
@@ -302,13 +797,12 @@ public class NewsItemDAO
      * timestamp from the database.
      */
     public void cleanupChannel(Channel chan, Instant ts) {
-	Connection conn = dbend.getConnection();
-
         String sql = "DELETE FROM news_item "
             + " WHERE is_removed=1 OR is_trash=1 " // removed items either way
             + " AND channel_id=? "
             + " AND date < ?";
-	try (PreparedStatement ps = conn.prepareStatement(sql)) {
+	try (PooledConnection pc = dbend.checkout()) {
+            PreparedStatement ps = pc.prepareStatement(sql);
             ps.setInt(1, chan.getChannelId());
             ps.setTimestamp(2, new Timestamp(ts.toEpochMilli()));
             ps.executeUpdate();
@@ -321,12 +815,12 @@ public class NewsItemDAO
      * channel.
      */
     public void removeChannelItems(Channel chan) {
-	Connection conn = dbend.getConnection();
-
         String sql = "DELETE FROM news_item WHERE channel_id=? ";
-	try (PreparedStatement ps = conn.prepareStatement(sql)) {
+	try (PooledConnection pc = dbend.checkout()) {
+            PreparedStatement ps = pc.prepareStatement(sql);
             ps.setInt(1, chan.getChannelId());
             ps.executeUpdate();
+            knownKeys.remove(chan.getChannelId());
         } catch (SQLException sqle) {
             dbend.getLogger().log(Level.SEVERE, "failed to remove channel items: " + sql, sqle);
         }
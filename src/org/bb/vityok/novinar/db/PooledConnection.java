@@ -0,0 +1,57 @@
+package org.bb.vityok.novinar.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/** Database connection checked out of the ConnectionPool.
+ *
+ * <p>The connection belongs to the caller until this object is
+ * closed, then it goes back to the pool together with its cached
+ * statements. Use it in a try-with-resources block and don't keep the
+ * Connection nor the statements past it.
+ */
+class PooledConnection
+    implements AutoCloseable
+{
+    private final ConnectionPool pool;
+    private StatementCache cache;
+
+    PooledConnection(ConnectionPool pool, StatementCache cache)
+    {
+        this.pool = pool;
+        this.cache = cache;
+    }
+
+    Connection getConnection()
+    {
+        return checkedOut().getConnection();
+    }
+
+    /** @return cached statement for the given constant SQL, it must
+     * not be closed
+     * @see StatementCache#prepare */
+    PreparedStatement prepareStatement(String sql)
+        throws SQLException
+    {
+        return checkedOut().prepare(sql);
+    }
+
+    private StatementCache checkedOut()
+    {
+        if (cache == null) {
+            throw new IllegalStateException("database connection was returned to the pool");
+        }
+        return cache;
+    }
+
+    /** Return the connection to the pool. */
+    @Override
+    public void close()
+    {
+        if (cache != null) {
+            pool.release(cache);
+            cache = null;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.bb.vityok.novinar.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Pooled connection together with the statements prepared on it.
+ *
+ * <p>The DAO methods run the same constant SQL over and over again.
+ * Preparing a statement makes Derby look it up in its statement cache
+ * or compile it, caching the PreparedStatement objects avoids that
+ * work completely. The least recently used statements are closed once
+ * there are more than MAX_STATEMENTS of them.
+ *
+ * <p>Cached statements are owned by the cache: callers must not close
+ * them, but should close their result sets. Not thread-safe, only the
+ * holder of the checked out connection uses it.
+ */
+class StatementCache
+{
+    /** Maximum number of cached statements per connection. */
+    public static final int MAX_STATEMENTS = 32;
+
+    private final Connection conn;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    private final LinkedHashMap<String, PreparedStatement> statements =
+        new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > MAX_STATEMENTS) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+
+    /** @param hits counter of the statements found in the cache
+     * @param misses counter of the statements prepared anew */
+    StatementCache(Connection conn, AtomicLong hits, AtomicLong misses)
+    {
+        this.conn = conn;
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    Connection getConnection()
+    {
+        return conn;
+    }
+
+    /** @return statement for the given SQL with its parameters and
+     * batch cleared */
+    PreparedStatement prepare(String sql)
+        throws SQLException
+    {
+        PreparedStatement ps = statements.get(sql);
+        if (ps != null && !ps.isClosed()) {
+            hits.incrementAndGet();
+            ps.clearParameters();
+            ps.clearBatch();
+            return ps;
+        }
+        misses.incrementAndGet();
+        ps = conn.prepareStatement(sql);
+        statements.put(sql, ps);
+        return ps;
+    }
+
+    /** Close all cached statements. */
+    void clear()
+    {
+        List<PreparedStatement> all = new ArrayList<>(statements.values());
+        statements.clear();
+        for (PreparedStatement ps : all) {
+            closeQuietly(ps);
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement ps)
+    {
+        try {
+            ps.close();
+        } catch (SQLException sqle) {
+            // the connection is probably closed already
+        }
+    }
+}
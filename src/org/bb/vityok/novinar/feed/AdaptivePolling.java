@@ -0,0 +1,116 @@
+package org.bb.vityok.novinar.feed;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+import java.util.List;
+
+import org.bb.vityok.novinar.core.Channel;
+import org.bb.vityok.novinar.core.Novinar;
+import org.bb.vityok.novinar.core.UpdatePeriod;
+
+/** Learns refresh intervals for channels with the ADAPTIVE update
+ * period.
+ *
+ * <p>The posting rate is estimated from the timestamps of the newest
+ * items already stored in the database. Busy channels are polled
+ * about twice per average gap between their items, dormant channels
+ * are polled less and less often the longer they stay silent. The
+ * learned interval is smoothed with the previous one and kept within
+ * the configured bounds.
+ */
+public class AdaptivePolling
+{
+    public static final Duration DEFAULT_MIN_INTERVAL = Duration.ofMinutes(15);
+    public static final Duration DEFAULT_MAX_INTERVAL = Duration.ofDays(2);
+
+    /** How many of the newest items are used for the estimation. */
+    public static final int SAMPLE_SIZE = 20;
+
+    private final Duration minInterval;
+    private final Duration maxInterval;
+
+    public AdaptivePolling(Duration minInterval, Duration maxInterval)
+    {
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval.compareTo(minInterval) < 0 ? minInterval : maxInterval;
+    }
+
+    /** Reads bounds from the system properties.
+     *
+     * @see Novinar#PROP_ADAPTIVE_MIN
+     * @see Novinar#PROP_ADAPTIVE_MAX
+     */
+    public static AdaptivePolling fromSystemProperties()
+    {
+        return new AdaptivePolling(durationProperty(Novinar.PROP_ADAPTIVE_MIN, DEFAULT_MIN_INTERVAL),
+                                   durationProperty(Novinar.PROP_ADAPTIVE_MAX, DEFAULT_MAX_INTERVAL));
+    }
+
+    private static Duration durationProperty(String name, Duration defaultValue)
+    {
+        String value = System.getProperty(name);
+        if (value != null) {
+            try {
+                return Duration.parse(value);
+            } catch (DateTimeParseException pe) {
+                Novinar.getLogger().severe("invalid duration in " + name + ": " + value);
+            }
+        }
+        return defaultValue;
+    }
+
+    /** Compute the next refresh interval.
+     *
+     * @param dates publication timestamps of the newest items, newest
+     * first
+     * @param previous previously learned interval or null
+     */
+    public Duration estimate(List<Instant> dates, Duration previous, Instant now)
+    {
+        Duration target;
+        if (dates.size() < 2) {
+            // not enough history: stay with what we have
+            target = (previous == null) ? UpdatePeriod.DEFAULT_UPDATE_PERIOD.getDuration() : previous;
+        } else {
+            Instant newest = dates.get(0);
+            Instant oldest = dates.get(dates.size() - 1);
+            Duration meanGap = Duration.between(oldest, newest).dividedBy(dates.size() - 1);
+            Duration silence = Duration.between(newest, now);
+            // a channel that has been silent for longer than its usual
+            // gap is probably dormant
+            Duration expectedGap = silence.compareTo(meanGap) > 0 ? silence : meanGap;
+            target = expectedGap.dividedBy(2);
+        }
+
+        Duration learned = (previous == null)
+            ? target
+            : previous.plus(target).dividedBy(2);
+        if (learned.compareTo(minInterval) < 0) {
+            return minInterval;
+        }
+        if (learned.compareTo(maxInterval) > 0) {
+            return maxInterval;
+        }
+        return learned;
+    }
+
+    /** Update the learned interval of an adaptive channel after a
+     * refresh.
+     */
+    public void adapt(Novinar novinar, Channel chan)
+    {
+        if (chan.getUpdatePeriod() != UpdatePeriod.ADAPTIVE) {
+            return;
+        }
+        try {
+            List<Instant> dates = novinar.getRecentItemDates(chan, SAMPLE_SIZE);
+            Duration learned = estimate(dates, chan.getAdaptiveInterval(), Instant.now());
+            chan.setAdaptiveInterval(learned);
+            Novinar.getLogger().info("adaptive refresh interval for " + chan + ": " + learned);
+        } catch (Exception e) {
+            Novinar.getLogger().severe("failed to learn refresh interval for " + chan + ": " + e);
+        }
+    }
+}
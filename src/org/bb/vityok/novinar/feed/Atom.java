@@ -69,11 +69,11 @@ public class Atom
     }
 
 
-    public Instant extractTimestamp(Element entry, String name) {
+    public Instant extractTimestamp(Channel chan, Element entry, String name) {
         NodeList timestamps = entry.getElementsByTagName(name);
         if (timestamps.getLength() > 0) {
             String tsStr = timestamps.item(0).getTextContent();
-            Instant ts = parseTimestamp(tsStr);
+            Instant ts = parseTimestamp(chan, tsStr);
             if (ts != null) { return ts; }
 
             Novinar.getLogger().severe("failed to parse timestamp: " + tsStr);
@@ -85,7 +85,7 @@ public class Atom
     }
 
 
-    public void processFeed(Channel chan, Document doc)
+    public void processFeed(Channel chan, Document doc, ItemWatermark watermark)
 	throws Exception
     {
 	Element docElement = doc.getDocumentElement();
@@ -102,12 +102,14 @@ public class Atom
 	    Novinar.getLogger().info("channel title: " + cTitle);
 	    Novinar.getLogger().info("channel link: " + cLink);
 	    Novinar.getLogger().info("channel description: " + cDescription);
+	    RefreshHints.extract(chan, feedElement);
 
 	    NodeList entriesList = docElement.getElementsByTagName("entry");
 
 	    Novinar.getLogger().info("got " + entriesList.getLength() + " entries");
 
             Instant oldestTimestamp = null;
+            ItemBatch batch = new ItemBatch(novinar, chan);
 
 	    for (int i = 0; i < entriesList.getLength(); i++) {
 		Element entry = (Element) entriesList.item(i);
@@ -125,22 +127,26 @@ public class Atom
                         iContent = summaryEntries.item(0).getTextContent();
                     }
                 }
-                Instant iTs = extractTimestamp(entry, "published");
+                Instant iTs = extractTimestamp(chan, entry, "published");
                 String iCreator = extractCreator(entry);
                 
 		NewsItem newsItem = new NewsItem();
 		newsItem.setTitle(iTitle);
 		newsItem.setLink(iLink);
+		newsItem.setGuid(extractGuid(entry, "id"));
 		newsItem.setDescription(iContent);
                 newsItem.setDateCalendar(iTs);
                 newsItem.setCreator(iCreator);
-		novinar.insertOrUpdateItem(chan, newsItem);
+		if (!watermark.isKnown(newsItem)) {
+		    batch.add(newsItem);
+		}
 
                 if (oldestTimestamp == null
                     || iTs.isBefore(oldestTimestamp)) {
                     oldestTimestamp = iTs;
                 }
 	    }
+            batch.flush();
             novinar.cleanupChannel(chan, oldestTimestamp);
 	}
     }
@@ -0,0 +1,82 @@
+package org.bb.vityok.novinar.feed;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.bb.vityok.novinar.core.Channel;
+import org.bb.vityok.novinar.core.Novinar;
+import org.bb.vityok.novinar.core.UpdatePeriod;
+
+/** Exponential backoff with jitter and a circuit breaker for channels
+ * that fail to refresh.
+ *
+ * <p>Every consecutive failure doubles the delay before the next
+ * automatic refresh, starting with the regular refresh interval of
+ * the channel. After FAILURES_TO_OPEN failures in a row the circuit
+ * opens and the channel is tried only once per OPEN_CIRCUIT_DELAY
+ * until it succeeds again. A Retry-After delay demanded by the server
+ * is never shortened.
+ *
+ * <p>The resulting retry time is stored in the Channel, the refresh
+ * scheduler simply doesn't consider the channel due before it.
+ */
+public class BackoffPolicy
+{
+    public static final int FAILURES_TO_OPEN = 5;
+    public static final Duration MAX_BACKOFF = Duration.ofHours(12);
+    public static final Duration OPEN_CIRCUIT_DELAY = Duration.ofDays(1);
+    /** Relative amount of randomness added to the delays. */
+    public static final double JITTER = 0.2;
+
+    /** Register a failed refresh.
+     *
+     * @param retryAfter delay requested by the server, or null
+     */
+    public void failed(Channel chan, Duration retryAfter)
+    {
+        int failures = chan.getFailureCount() + 1;
+        boolean open = failures >= FAILURES_TO_OPEN;
+
+        Duration delay;
+        if (open) {
+            delay = OPEN_CIRCUIT_DELAY;
+        } else {
+            Duration base = chan.getRefreshInterval();
+            if (base == null) {
+                base = UpdatePeriod.DEFAULT_UPDATE_PERIOD.getDuration();
+            }
+            delay = base.multipliedBy(1L << Math.min(failures - 1, 16));
+            if (delay.compareTo(MAX_BACKOFF) > 0) {
+                delay = MAX_BACKOFF;
+            }
+        }
+        delay = withJitter(delay);
+        if (retryAfter != null && retryAfter.compareTo(delay) > 0) {
+            delay = retryAfter;
+        }
+
+        Instant retryAt = Instant.now().plus(delay);
+        chan.setBackoff(failures, retryAt, open);
+        Novinar.getLogger().warning("channel " + chan + " failed " + failures + " time(s) in a row,"
+                                    + (open ? " circuit open," : "")
+                                    + " next attempt at: " + retryAt);
+    }
+
+    /** Register a successful refresh: closes the circuit. */
+    public void succeeded(Channel chan)
+    {
+        if (chan.getFailureCount() > 0) {
+            Novinar.getLogger().info("channel " + chan + " recovered after "
+                                     + chan.getFailureCount() + " failure(s)");
+            chan.resetBackoff();
+        }
+    }
+
+    private static Duration withJitter(Duration delay)
+    {
+        double factor = 1.0 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+        return Duration.ofMillis((long) (delay.toMillis() * factor));
+    }
+}
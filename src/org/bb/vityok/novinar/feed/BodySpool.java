@@ -0,0 +1,127 @@
+package org.bb.vityok.novinar.feed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.security.MessageDigest;
+
+import java.util.Arrays;
+
+/** Decoded body of a feed download, kept while the feed is processed.
+ *
+ * <p>The body is read from the connection once. Its fingerprint for
+ * the FeedBodyCache is computed on the way, so an unchanged body is
+ * recognized before it is parsed. The parsers then read the spooled
+ * copy, the DOM parsers a second time if the streaming parser fails.
+ *
+ * <p>Bodies of up to MEMORY_LIMIT bytes are kept in memory, larger
+ * ones are written to a temporary file that is deleted on close.
+ */
+public class BodySpool
+    implements AutoCloseable
+{
+    public static final int MEMORY_LIMIT = 512 * 1024;
+
+    private byte[] data;
+    private File file;
+    private long size = 0;
+    private String fingerprint;
+
+    private BodySpool() {}
+
+    /** Read the whole stream and close it.
+     *
+     * @param dir directory for the bodies that don't fit in memory
+     */
+    public static BodySpool read(InputStream is, File dir)
+        throws IOException
+    {
+        BodySpool spool = new BodySpool();
+        MessageDigest digest = FeedBodyCache.newDigest();
+        ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        OutputStream out = memory;
+        try {
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = is.read(buf)) != -1) {
+                digest.update(buf, 0, n);
+                if (spool.file == null && spool.size + n > MEMORY_LIMIT) {
+                    spool.file = File.createTempFile("body", ".xml", dir);
+                    out = new BufferedOutputStream(new FileOutputStream(spool.file));
+                    memory.writeTo(out);
+                    memory = null;
+                }
+                out.write(buf, 0, n);
+                spool.size += n;
+            }
+        } catch (IOException ioe) {
+            out.close();
+            spool.close();
+            throw ioe;
+        } finally {
+            is.close();
+        }
+        out.close();
+        if (memory != null) {
+            spool.data = memory.toByteArray();
+        }
+        spool.fingerprint = FeedBodyCache.fingerprint(digest);
+        return spool;
+    }
+
+    /** Hex-encoded hash of the body.
+     *
+     * @see FeedBodyCache#fingerprint(byte[])
+     */
+    public String getFingerprint()
+    {
+        return fingerprint;
+    }
+
+    /** Number of bytes in the body. */
+    public long getSize()
+    {
+        return size;
+    }
+
+    /** @return new stream reading the body from the beginning */
+    public InputStream openStream()
+        throws IOException
+    {
+        return (file == null)
+            ? new ByteArrayInputStream(data)
+            : new BufferedInputStream(new FileInputStream(file));
+    }
+
+    /** @return at most the given number of bytes from the beginning
+     * of the body */
+    public byte[] head(int limit)
+        throws IOException
+    {
+        if (file == null) {
+            return Arrays.copyOf(data, (int) Math.min(limit, size));
+        }
+        try (InputStream is = openStream()) {
+            return is.readNBytes(limit);
+        }
+    }
+
+    /** Release the memory or delete the spool file. */
+    @Override
+    public void close()
+    {
+        data = null;
+        if (file != null) {
+            file.delete();
+            file = null;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.bb.vityok.novinar.feed;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/** Decoder for a HTTP content coding (<tt>Content-Encoding</tt>
+ * header) like gzip or deflate.
+ *
+ * @see ContentCodecs
+ */
+@FunctionalInterface
+public interface ContentCodec
+{
+    /** Wraps the raw response stream into a stream of decoded bytes. */
+    public InputStream decode(InputStream is) throws IOException;
+}
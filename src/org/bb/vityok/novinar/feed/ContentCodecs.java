@@ -0,0 +1,100 @@
+package org.bb.vityok.novinar.feed;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+
+import java.util.Map;
+import java.util.LinkedHashMap;
+
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** Registry of the content codings that we are able to decode.
+ *
+ * <p>Names of the registered codecs are advertised to the servers in
+ * the <tt>Accept-Encoding</tt> request header. Additional codecs can
+ * be plugged in with the register method before feeds are loaded.
+ */
+public class ContentCodecs
+{
+    private static final Map<String, ContentCodec> codecs = new LinkedHashMap<>();
+
+    static {
+        register("gzip", is -> new GZIPInputStream(is, 8192));
+        register("x-gzip", is -> new GZIPInputStream(is, 8192));
+        register("deflate", ContentCodecs::inflate);
+    }
+
+    private ContentCodecs() {}
+
+    /** Make a codec available for the given content coding name. */
+    public static synchronized void register(String encoding, ContentCodec codec) {
+        codecs.put(encoding.toLowerCase(), codec);
+    }
+
+    /** Value for the <tt>Accept-Encoding</tt> request header. */
+    public static synchronized String getAcceptEncoding() {
+        StringBuilder sb = new StringBuilder();
+        for (String encoding : codecs.keySet()) {
+            if (encoding.startsWith("x-")) {
+                continue; // legacy aliases are not advertised
+            }
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(encoding);
+        }
+        return sb.toString();
+    }
+
+    /** Decode the response stream according to its
+     * <tt>Content-Encoding</tt> header value.
+     *
+     * @throws IOException if the content coding is not supported
+     */
+    public static InputStream decode(String contentEncoding, InputStream is)
+        throws IOException
+    {
+        if (contentEncoding == null) {
+            return is;
+        }
+        // several codings might be applied one after another
+        String[] encodings = contentEncoding.split(",");
+        InputStream decoded = is;
+        for (int i = encodings.length - 1; i >= 0; i--) {
+            String encoding = encodings[i].trim().toLowerCase();
+            if (encoding.isEmpty() || encoding.equals("identity")) {
+                continue;
+            }
+            ContentCodec codec;
+            synchronized (ContentCodecs.class) {
+                codec = codecs.get(encoding);
+            }
+            if (codec == null) {
+                throw new IOException("unsupported content encoding: " + encoding);
+            }
+            decoded = codec.decode(decoded);
+        }
+        return decoded;
+    }
+
+    /** "deflate" is supposed to be zlib-wrapped, but some servers
+     * send raw deflate data instead. Peek at the header to tell.
+     */
+    private static InputStream inflate(InputStream is)
+        throws IOException
+    {
+        PushbackInputStream pis = new PushbackInputStream(is, 2);
+        byte[] header = new byte[2];
+        int n = pis.read(header);
+        if (n > 0) {
+            pis.unread(header, 0, n);
+        }
+        boolean zlib = n == 2
+            && (header[0] & 0x0F) == 8
+            && (((header[0] & 0xFF) << 8) | (header[1] & 0xFF)) % 31 == 0;
+        return new InflaterInputStream(pis, new Inflater(!zlib), 8192);
+    }
+}
@@ -0,0 +1,203 @@
+package org.bb.vityok.novinar.feed;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import java.util.logging.Level;
+
+import org.bb.vityok.novinar.core.Novinar;
+
+/** On-disk cache of feed body fingerprints.
+ *
+ * <p>Many servers send neither ETag nor Last-Modified, so the whole
+ * feed is downloaded every time. For every feed URL the cache keeps a
+ * hash of the last processed body: when a fresh download hashes the
+ * same, there is nothing new in it and it doesn't have to be parsed
+ * and stored again.
+ *
+ * <p>The body is hashed while it is spooled, see BodySpool. Bodies too
+ * large to be kept in memory go to the spool subdirectory.
+ *
+ * <p>Every feed has its own small file in the cache directory. When
+ * the total size of the directory exceeds the limit, the least
+ * recently used entries are evicted.
+ */
+public class FeedBodyCache
+{
+    public static final long DEFAULT_MAX_SIZE = 4L * 1024 * 1024;
+
+    private final File dir;
+    private final File spoolDir;
+    private final long maxSize;
+    private long size = 0;
+
+    public FeedBodyCache(File dir)
+    {
+        this(dir, DEFAULT_MAX_SIZE);
+    }
+
+    public FeedBodyCache(File dir, long maxSize)
+    {
+        this.dir = dir;
+        this.maxSize = maxSize;
+        this.spoolDir = new File(dir, "spool");
+        if (!spoolDir.isDirectory() && !spoolDir.mkdirs()) {
+            Novinar.getLogger().severe("failed to create feed cache directory: " + spoolDir);
+        }
+        // left over by a crash
+        for (File f : listFiles(spoolDir)) {
+            f.delete();
+        }
+        for (File f : listFiles(dir)) {
+            size += f.length();
+        }
+        Novinar.getLogger().info("feed cache at " + dir + " holds " + size + " bytes");
+    }
+
+    /** Directory for the bodies spooled to disk. */
+    public File getSpoolDir()
+    {
+        return spoolDir;
+    }
+
+    /** @return cache entries or spool files in the directory */
+    private static File[] listFiles(File dir)
+    {
+        File[] files = dir.listFiles(File::isFile);
+        return (files == null) ? new File[0] : files;
+    }
+
+    /** Hex-encoded SHA-256 hash of the given data. */
+    public static String fingerprint(byte[] data)
+    {
+        return toHex(newDigest().digest(data));
+    }
+
+    /** @return digest for computing the fingerprint of a body while
+     * it is read */
+    public static MessageDigest newDigest()
+    {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(nsae);
+        }
+    }
+
+    /** Hex-encoded hash of everything passed to the digest so far,
+     * the digest is reset. */
+    public static String fingerprint(MessageDigest digest)
+    {
+        return toHex(digest.digest());
+    }
+
+    private static String toHex(byte[] bytes)
+    {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private File entryFile(String url)
+    {
+        return new File(dir, fingerprint(url.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** Check if the last processed body of the feed had the same
+     * fingerprint.
+     */
+    public synchronized boolean matches(String url, String fingerprint)
+    {
+        File f = entryFile(url);
+        if (!f.isFile()) {
+            return false;
+        }
+        try {
+            List<String> lines = Files.readAllLines(f.toPath(), StandardCharsets.UTF_8);
+            // first line is the URL itself, guards against hash collisions
+            boolean same = lines.size() >= 2
+                && lines.get(0).equals(url)
+                && lines.get(1).equals(fingerprint);
+            if (same) {
+                f.setLastModified(System.currentTimeMillis());
+            }
+            return same;
+        } catch (IOException ioe) {
+            Novinar.getLogger().log(Level.WARNING, "failed to read feed cache entry: " + f, ioe);
+            return false;
+        }
+    }
+
+    /** Remember fingerprint of the successfully processed body. */
+    public synchronized void put(String url, String fingerprint)
+    {
+        File f = entryFile(url);
+        long oldLength = f.length();
+        try {
+            Files.write(f.toPath(), (url + "\n" + fingerprint + "\n").getBytes(StandardCharsets.UTF_8));
+            size += f.length() - oldLength;
+        } catch (IOException ioe) {
+            Novinar.getLogger().log(Level.WARNING, "failed to write feed cache entry: " + f, ioe);
+        }
+        if (size > maxSize) {
+            evict();
+        }
+    }
+
+    /** Forget the fingerprint, the next download will be processed
+     * whatever it contains. */
+    public synchronized void remove(String url)
+    {
+        File f = entryFile(url);
+        long length = f.length();
+        if (f.delete()) {
+            size -= length;
+        }
+    }
+
+    /** Forget all fingerprints. */
+    public synchronized void clear()
+    {
+        for (File f : listFiles(dir)) {
+            f.delete();
+        }
+        size = 0;
+        Novinar.getLogger().info("feed cache at " + dir + " cleared");
+    }
+
+    /** Remove least recently used entries until the cache shrinks to
+     * three quarters of its limit.
+     */
+    private void evict()
+    {
+        File[] files = listFiles(dir);
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        long target = maxSize / 4 * 3;
+        int evicted = 0;
+        for (File f : files) {
+            if (size <= target) {
+                break;
+            }
+            long length = f.length();
+            if (f.delete()) {
+                size -= length;
+                evicted++;
+            }
+        }
+        Novinar.getLogger().info("evicted " + evicted + " feed cache entries, " + size + " bytes left");
+    }
+}
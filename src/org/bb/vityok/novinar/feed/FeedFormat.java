@@ -0,0 +1,21 @@
+package org.bb.vityok.novinar.feed;
+
+/** Feed formats Novinar knows how to parse. */
+public enum FeedFormat
+{
+    RSS, RDF, ATOM;
+
+    /** Detect the feed format by the name of the root element.
+     *
+     * @return format of the feed or <tt>null</tt> if it is unknown
+     */
+    public static FeedFormat of(String namespace, String localName)
+    {
+        switch (localName) {
+        case "rss": return RSS;
+        case "RDF": return FeedParser.RDF_NS.equals(namespace) ? RDF : null;
+        case "feed": return ATOM;
+        default: return null;
+        }
+    }
+}
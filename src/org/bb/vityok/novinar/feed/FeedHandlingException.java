@@ -1,5 +1,7 @@
 package org.bb.vityok.novinar.feed;
 
+import java.time.Duration;
+
 /**
  * Common exception for all possible problems with downloading, parsing and
  * updating feeds.
@@ -9,7 +11,21 @@ public class FeedHandlingException extends Exception {
 
     public static final long serialVersionUID = 1234L;
 
+    /** How long the server asked us to wait before retrying, if it did. */
+    private final Duration retryAfter;
+
     public FeedHandlingException(String msg) {
+	this(msg, null);
+    }
+
+    public FeedHandlingException(String msg, Duration retryAfter) {
 	super(msg);
+	this.retryAfter = retryAfter;
+    }
+
+    /** Value of the Retry-After header of the failed response, or
+     * <tt>null</tt>. */
+    public Duration getRetryAfter() {
+	return retryAfter;
     }
 }
@@ -1,6 +1,5 @@
 package org.bb.vityok.novinar.feed;
 
-import java.text.ParseException;
 import java.text.ParsePosition;
 
 import java.time.Instant;
@@ -41,7 +40,21 @@ public abstract class FeedParser
      * @see processFeed
      */
     public abstract boolean accepts(Document doc) throws Exception;
-    public abstract void processFeed(Channel chan, Document doc) throws Exception;
+
+    /** Store the items of the feed that are not known yet.
+     *
+     * @arg watermark tells which items were stored by the previous
+     * refresh
+     */
+    public abstract void processFeed(Channel chan, Document doc, ItemWatermark watermark)
+        throws Exception;
+
+    /** Store all items of the feed. */
+    public void processFeed(Channel chan, Document doc)
+        throws Exception
+    {
+        processFeed(chan, doc, new ItemWatermark(chan, false));
+    }
 
     /** Set of timestamp parser patterns.
      *
@@ -85,34 +98,129 @@ public abstract class FeedParser
     public static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy");
 
 
-    /** Attempts to parse the given timestamp using TIMESTAMP_FORMATS.
+    /** Timestamp format numbers, as remembered in the Channel. The
+     * patterns of TIMESTAMP_FORMATS follow TS_PATTERNS.
+     */
+    public static final int TS_RFC822 = 0;
+    public static final int TS_ISO8601 = 1;
+    public static final int TS_ALL_DAY = 2;
+    public static final int TS_PATTERNS = 3;
+    public static final int TS_FORMATS_COUNT = TS_PATTERNS + TIMESTAMP_FORMATS.length;
+
+
+    /** Attempts to parse the given timestamp with the RFC-822 and
+     * ISO-8601 scanners, and then using TIMESTAMP_FORMATS.
      *
      * @return a Instant object upon a success, null otherwise.
      */
     public static Instant parseTimestamp(String timestamp) {
+	return parseTimestamp(null, timestamp);
+    }
+
+    /** Attempts to parse the given timestamp starting with the format
+     * that worked for the channel last time.
+     *
+     * <p>Items of the same feed are normally stamped the same way, so
+     * usually the first attempt succeeds.
+     *
+     * @param chan channel to remember the format in, or null
+     * @return a Instant object upon a success, null otherwise.
+     */
+    public static Instant parseTimestamp(Channel chan, String timestamp) {
 	String ts = timestamp.trim();
+	int known = (chan != null) ? chan.getTimestampFormat() : -1;
+	if (known >= 0 && known < TS_FORMATS_COUNT) {
+	    Instant iTs = parseTimestamp(known, ts);
+	    if (iTs != null) {
+		return iTs;
+	    }
+	}
+	for (int format = 0; format < TS_FORMATS_COUNT; format++) {
+	    if (format == known) {
+		continue;
+	    }
+	    Instant iTs = parseTimestamp(format, ts);
+	    if (iTs != null) {
+		if (chan != null) {
+		    chan.setTimestampFormat(format);
+		}
+		return iTs;
+	    }
+	}
+	return null;
+    }
 
-	if (timestamp.endsWith(ALL_DAY) && ts.length() > ALL_DAY.length()) {
+    /** Parses the trimmed timestamp in the given format without
+     * throwing exceptions on mismatch.
+     *
+     * @return a Instant object upon a success, null otherwise.
+     */
+    private static Instant parseTimestamp(int format, String ts) {
+	switch (format) {
+	case TS_RFC822:
+	    return TimestampScanner.scanRfc822(ts);
+	case TS_ISO8601:
+	    return TimestampScanner.scanIso8601(ts);
+	case TS_ALL_DAY:
 	    // if the date-time is incomplete and only date is present
-	    try {
-		ts = ts.substring(0, ts.length() - ALL_DAY.length());
-		LocalDate ld = LocalDate.parse(ts, DAY_FORMAT);
-		Instant iTs = ld.atStartOfDay().toInstant(ZoneOffset.UTC);
-		return iTs;
-	    } catch (DateTimeParseException pe) {
-		pe.printStackTrace();
+	    if (ts.endsWith(ALL_DAY) && ts.length() > ALL_DAY.length()) {
+		String day = ts.substring(0, ts.length() - ALL_DAY.length());
+		if (matches(DAY_FORMAT, day)) {
+		    try {
+			LocalDate ld = LocalDate.parse(day, DAY_FORMAT);
+			return ld.atStartOfDay().toInstant(ZoneOffset.UTC);
+		    } catch (DateTimeParseException pe) {
+			return null;
+		    }
+		}
 	    }
-	} else {
-	    for (DateTimeFormatter tsFormat : TIMESTAMP_FORMATS) {
+	    return null;
+	default:
+	    DateTimeFormatter tsFormat = TIMESTAMP_FORMATS[format - TS_PATTERNS];
+	    if (matches(tsFormat, ts)) {
 		try {
-		    Instant iTs = tsFormat.parse(ts, Instant::from);
-		    return iTs;
+		    return tsFormat.parse(ts, Instant::from);
 		} catch (DateTimeParseException pe) {
-		    continue;
+		    // matched the pattern, but it is not a valid date
+		    return null;
 		}
 	    }
+	    return null;
 	}
-	return null;
+    }
+
+    /** Check if the text matches the pattern without resolving it,
+     * which is what throws on mismatch. */
+    private static boolean matches(DateTimeFormatter format, String text) {
+	ParsePosition pos = new ParsePosition(0);
+	return format.parseUnresolved(text, pos) != null
+	    && pos.getErrorIndex() < 0
+	    && pos.getIndex() == text.length();
+    }
+
+    /** Extracts identifier of the item that is not supposed to change
+     * even if its link does.
+     *
+     * @param name element that holds the identifier: "guid" for RSS,
+     * "id" for Atom
+     * @return contents of the first such element or null
+     */
+    public String extractGuid(Element item, String name) {
+        NodeList guids = item.getElementsByTagName(name);
+        if (guids.getLength() > 0) {
+            return normalizeGuid(guids.item(0).getTextContent());
+        }
+        return null;
+    }
+
+    /** @return the identifier without surrounding whitespace, null
+     * if it is empty */
+    public static String normalizeGuid(String guid) {
+        if (guid == null) {
+            return null;
+        }
+        guid = guid.trim();
+        return guid.isEmpty() ? null : guid;
     }
 
     /**
@@ -9,41 +9,44 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 
-import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLDecoder;
+
+import java.time.Duration;
+import java.time.Instant;
 
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
-import java.time.Duration;
-import java.time.Instant;
 
+import java.util.EnumMap;
 import java.util.List;
-import java.util.LinkedList;
+import java.util.Map;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import java.util.logging.Level;
 
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.DocumentBuilder;
 
 import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.bb.vityok.novinar.core.Channel;
 import org.bb.vityok.novinar.core.Novinar;
-import org.bb.vityok.novinar.core.UpdatePeriod;
+import org.bb.vityok.novinar.core.XMLParsers;
 
 /**
  * Download news feed and send it to the appropriate parser (Atom, RSS, RSS+RDF,
  * etc).
  *
  * <p>
+ * Remote feeds are downloaded with the shared HttpEngine.
+ *
+ * <p>
  * Updates channel information (last time updated, if there are any problems,
  * etc.)
  */
@@ -56,8 +59,17 @@ public class FeedReader extends Thread
      * passed as a stream of chars to the XML parser.
      */
     final public static char UTF8_BOM = '\uFEFF';
-    final private List<FeedParser> parsers;
+    final private Map<FeedFormat, FeedParser> parsers;
+    final private StreamingFeedParser streamingParser;
+    final private boolean streaming;
+    final private boolean fullResync;
     final private ExecutorService threadPool;
+    final private HttpEngine engine;
+    final private HostScheduler hostScheduler;
+    final private RefreshScheduler refreshScheduler = new RefreshScheduler();
+    final private AdaptivePolling adaptivePolling = AdaptivePolling.fromSystemProperties();
+    final private BackoffPolicy backoffPolicy = new BackoffPolicy();
+    final private FeedBodyCache bodyCache;
 
     private Novinar novinar;
 
@@ -66,68 +78,31 @@ public class FeedReader extends Thread
         super("Feeds reader thread");
         this.novinar = novinar;
 
-        parsers = new LinkedList<>();
-        parsers.add(new RDF(novinar));
-        parsers.add(new RSS(novinar));
-        parsers.add(new Atom(novinar));
-
-        threadPool = Executors.newFixedThreadPool(3);
-    }
-
-    public class Pair<F, S>
-    {
-        final private F first;
-        final private S second;
-        Pair(F first, S second)
-        {
-            this.first = first;
-            this.second = second;
-        }
-        public F getFirst() { return first; }
-        public S getSecond() { return second; }
-    }
-
-    /**
-     * Opens connection to a remote resource and returns the input stream.
-     */
-    public Pair<InputStream,String> openRemoteFeed(String url)
-        throws Exception
-    {
-        String location = url;
-        URL base, next;
-        for (int attempts = 0; attempts < 5; ++attempts) {
-            URL feedURL = new URL(url);
-            HttpURLConnection con = (HttpURLConnection) feedURL.openConnection();
-
-            con.setConnectTimeout(15000);
-            con.setReadTimeout(15000);
-            con.setRequestProperty("User-Agent", "Novinar RSS feed reader");
-            con.setInstanceFollowRedirects(true);
-
-            int responseCode = con.getResponseCode();
-            Novinar.getLogger().info("\nSending 'GET' request to URL : " + feedURL);
-            Novinar.getLogger().info("Response Code : " + responseCode);
-
-            // this approach in combination with
-            // con.setInstanceFollowRedirects(true) allows to follow
-            // redirects from HTTP to HTTPS locations. See:
-            // https://stackoverflow.com/questions/1884230/urlconnection-doesnt-follow-redirect
-            switch (con.getResponseCode()) {
-            case HttpURLConnection.HTTP_MOVED_PERM:
-            case HttpURLConnection.HTTP_MOVED_TEMP:
-                location = con.getHeaderField("Location");
-                location = URLDecoder.decode(location, "UTF-8");
-                base = new URL(url);
-                next = new URL(base, location); // Deal with relative URLs
-                url = next.toExternalForm();
-                continue;
-            case HttpURLConnection.HTTP_OK:
-                String preferredEncoding = con.getContentEncoding();
-                InputStream is = con.getInputStream();
-                return new Pair<>(is, preferredEncoding);
-            }
+        parsers = new EnumMap<>(FeedFormat.class);
+        parsers.put(FeedFormat.RDF, new RDF(novinar));
+        parsers.put(FeedFormat.RSS, new RSS(novinar));
+        parsers.put(FeedFormat.ATOM, new Atom(novinar));
+        streamingParser = new StreamingFeedParser(novinar);
+        streaming = !"dom".equals(System.getProperty(Novinar.PROP_FEED_PARSER, "streaming"));
+        fullResync = Boolean.getBoolean(Novinar.PROP_FULL_RESYNC);
+
+        // downloads don't block the worker threads, these are
+        // busy only with parsing and storing the feeds
+        threadPool = FetchExecutors.create(System.getProperty(Novinar.PROP_FETCH_EXECUTOR,
+                                                              FetchExecutors.MODE_FIXED),
+                                           Integer.getInteger(Novinar.PROP_FETCH_LIMIT,
+                                                              FetchExecutors.DEFAULT_VIRTUAL_LIMIT));
+        engine = new HttpEngine();
+        bodyCache = new FeedBodyCache(novinar.getFeedCacheDir());
+        if (novinar.isDbCreated()) {
+            // the fingerprints were left by a database that is gone,
+            // its items have to be stored again
+            bodyCache.clear();
         }
-        return null;
+        hostScheduler = new HostScheduler(Integer.getInteger(Novinar.PROP_HOST_CONCURRENCY,
+                                                             HostScheduler.DEFAULT_MAX_PER_HOST),
+                                          Long.getLong(Novinar.PROP_HOST_DELAY,
+                                                       HostScheduler.DEFAULT_MIN_DELAY_MILLIS));
     }
 
     /**
@@ -188,107 +163,359 @@ public class FeedReader extends Thread
         return sb.toString();
     }
 
-    public Document loadFeed(Channel chan)
+    /**
+     * Download the feed of the given channel and wait for it to be
+     * processed.
+     *
+     * @return <tt>true</tt> if the feed was processed, <tt>false</tt>
+     * if there was nothing new to process.
+     */
+    public boolean loadFeed(Channel chan)
         throws Exception
+    {
+        try {
+            return loadFeedAsync(chan).get();
+        } catch (ExecutionException ee) {
+            Throwable cause = (ee.getCause() instanceof CompletionException)
+                ? ee.getCause().getCause()
+                : ee.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw ee;
+        }
+    }
+
+
+    /**
+     * Start downloading the feed of the given channel.
+     *
+     * <p>
+     * The HTTP engine waits for the response headers without occupying
+     * any of the worker threads. A thread of the pool then decodes and
+     * spools the body, and parses and stores the spooled copy.
+     *
+     * @return future completed with <tt>true</tt> if the feed was
+     * processed, or with <tt>false</tt> if there was nothing new to
+     * process.
+     */
+    public CompletableFuture<Boolean> loadFeedAsync(Channel chan)
     {
         if (Thread.currentThread().isInterrupted()) {
-            return null;
+            return CompletableFuture.completedFuture(false);
         }
 
         Novinar.getLogger().info("loading items for the channel: " + chan);
 
-        InputStream is = null;
-        String url = chan.getLink();
-        URL feedURL = new URL(url);
-        String preferredEncoding = "UTF-8";
-
+        CompletableFuture<FeedResponse> download;
         try {
-            switch (feedURL.getProtocol()) {
-            case "file": {
-                is = openLocalFeed(feedURL.getPath());
-                break;
-            }
-            case "http":
-            case "https": {
-                Pair<InputStream,String> res = openRemoteFeed(url);
-                is = res.getFirst();
-                if (res.getSecond() != null
-                    && res.getSecond().length() > 0) {
-                    preferredEncoding = res.getSecond();
-                }
-                else {
-                    preferredEncoding = null;
-                }
-                break;
-            }
-            default: {
+            download = download(chan);
+            if (download == null) {
+                chan.touch();
                 chan.setProblems("Invalid URL, could not detect protocol");
-                return null;
+                return CompletableFuture.completedFuture(false);
             }
+        } catch (Exception e) {
+            download = CompletableFuture.failedFuture(e);
+        }
+
+        return download.handleAsync((response, failure) -> {
+                try {
+                    return processResponse(chan, response, failure);
+                } catch (FeedHandlingException fhe) {
+                    throw new CompletionException(fhe);
+                } finally {
+                    if (response != null) {
+                        response.release();
+                    }
+                }
+            }, threadPool);
+    }
+
+
+    /**
+     * @return future completed with the response once its body can be
+     * read, or null if the protocol of the feed URL is not supported
+     */
+    private CompletableFuture<FeedResponse> download(Channel chan)
+        throws Exception
+    {
+        URL feedURL = new URL(chan.getLink());
+        switch (feedURL.getProtocol()) {
+        case "file": {
+            return CompletableFuture.completedFuture(new FeedResponse(200,
+                                                                      openLocalFeed(feedURL.getPath()),
+                                                                      null, "UTF-8", null, null));
+        }
+        case "http":
+        case "https": {
+            // be polite to the hosts serving many of our feeds; the
+            // host is free again when the response is released, after
+            // its body has been read
+            return hostScheduler.submit(feedURL.getHost().toLowerCase(),
+                                        release -> engine.fetch(chan).thenApply(response -> {
+                                                response.setOnRelease(release);
+                                                return response;
+                                            }));
+        }
+        default: {
+            return null;
+        }
+        }
+    }
+
+
+    /**
+     * Parse the downloaded feed and send it to the appropriate parser.
+     *
+     * @param failure exception that prevented the download, if any
+     */
+    private boolean processResponse(Channel chan, FeedResponse response, Throwable failure)
+        throws FeedHandlingException
+    {
+        String url = chan.getLink();
+        if (failure != null) {
+            Throwable cause = (failure instanceof CompletionException && failure.getCause() != null)
+                ? failure.getCause()
+                : failure;
+            Novinar.getLogger().log(Level.SEVERE, "failed to download feed for channel: " + chan, cause);
+            chan.touch();
+            String problem = "Failed to open: " + url + " (" + cause + ")";
+            chan.setProblems(problem);
+            throw new FeedHandlingException(problem);
+        }
+
+        if (response.getStatus() == 200 || response.isNotModified()) {
+            chan.setCacheLifetime(response.getCacheLifetime());
+        }
+
+        if (response.isNotModified()) {
+            // nothing new since the last download, there is
+            // nothing to parse and nothing to store
+            int hits = chan.countNotModified();
+            Novinar.getLogger().info("channel not modified: " + chan
+                                     + " (304 replies so far: " + hits + ")");
+            chan.touch();
+            return false;
+        }
+
+        InputStream is;
+        try {
+            // decoding starts here, in the worker thread
+            is = response.getBody();
+        } catch (IOException ioe) {
+            Novinar.getLogger().log(Level.SEVERE, "failed to decode feed for channel: " + chan, ioe);
+            chan.touch();
+            String problem = "Failed to decode: " + url + " (" + ioe + ")";
+            chan.setProblems(problem);
+            throw new FeedHandlingException(problem);
+        }
+        // Input stream for reading feed data obtained, handle it
+        if (is == null) {
+            Novinar.getLogger().severe("FeedReader failed to open: " + url
+                                       + " status: " + response.getStatus());
+            chan.touch();
+            String problem = "Failed to open: " + url + " (HTTP status " + response.getStatus() + ")";
+            if (response.getRetryAfter() != null) {
+                problem += ", retry after " + response.getRetryAfter();
             }
+            chan.setProblems(problem);
+            throw new FeedHandlingException(problem, response.getRetryAfter());
+        }
 
-            // Input stream for reading feed data obtained, handle it
-            if (is == null) {
-                Novinar.getLogger().severe("FeedReader failed to open: " + url);
+        try (BodySpool spool = BodySpool.read(is, bodyCache.getSpoolDir())) {
+            chan.countTransferredBytes(response.getCompressedBytes(),
+                                       response.getUncompressedBytes());
+            Novinar.getLogger().info("downloaded " + response.getCompressedBytes()
+                                     + " bytes (" + response.getUncompressedBytes()
+                                     + " decoded, encoding: " + response.getContentEncoding()
+                                     + ") for " + chan);
+
+            // servers that don't support conditional requests send
+            // the same feed over and over again
+            if (bodyCache.matches(url, spool.getFingerprint())) {
+                Novinar.getLogger().info("feed contents unchanged since the last download: " + chan);
+                chan.setValidators(response.getETag(), response.getLastModified());
                 chan.touch();
-                String problem = "Failed to open: " + url;
-                chan.setProblems(problem);
-                throw new FeedHandlingException(problem);
-            } else {
-                Document doc = parseFeedXml(is, preferredEncoding);
-
-                // optional, but recommended read this:
-                // http://stackoverflow.com/questions/13786607/normalization-in-dom-parsing-with-java-how-does-it-work
-                doc.getDocumentElement().normalize();
-
-                Novinar.getLogger().fine("Root element :[" + doc.getDocumentElement().getNodeName() + "]");
-                for (FeedParser parser : parsers) {
-                    if (parser.accepts(doc)) {
-                        Novinar.getLogger().info("Processing feed with " + parser);
-                        parser.processFeed(chan, doc);
-                        is.close();
-                        chan.touch();
-                        // reset existing state of the accumulated problems for this channel
-                        chan.setProblems(null);
-                        return doc;
-                    }
+                chan.setProblems(null);
+                return false;
+            }
+
+            // the format is detected once, later downloads of the
+            // same feed rely on the remembered one
+            FeedFormat format = rememberedFormat(chan);
+            if (format == null) {
+                try {
+                    format = FeedSniffer.sniff(spool.head(FeedSniffer.SNIFF_LIMIT + 1),
+                                               response.getCharset());
+                } catch (FeedHandlingException fhe) {
+                    Novinar.getLogger().severe("rejecting " + url + ": " + fhe.getMessage());
+                    chan.touch();
+                    chan.setProblems("FeedReader doesn't know how to handle this type of feeds ("
+                                     + fhe.getMessage() + ")");
+                    throw fhe;
                 }
-                is.close();
+                Novinar.getLogger().info("detected feed format " + format + " for " + chan);
+            }
 
-                Novinar.getLogger().severe("FeedReader doesn't know how to handle this type of feeds. Inspect: " + url);
-                String problem = "FeedReader doesn't know how to handle this type of feeds.";
-                chan.setProblems(problem);
-                throw new FeedHandlingException(problem);
+            long updatedBefore = chan.getUpdatedItems();
+            long unchangedBefore = chan.getUnchangedItems();
+            // items up to the one stored by the previous refresh are
+            // not stored again
+            ItemWatermark watermark = new ItemWatermark(chan, !fullResync);
+            boolean processed = false;
+            if (streaming) {
+                try (InputStream doc = spool.openStream()) {
+                    format = streamingParser.processFeed(chan, doc, response.getCharset(), watermark);
+                    processed = true;
+                } catch (Exception e) {
+                    // the DOM parsers read the spooled body once more,
+                    // items stored before the failure are stored again
+                    // as updates of themselves
+                    Novinar.getLogger().log(Level.WARNING, "streaming parser failed, falling back to DOM for channel: "
+                                            + chan, e);
+                    watermark = new ItemWatermark(chan, !fullResync);
+                }
+            }
+            if (!processed) {
+                try (InputStream doc = spool.openStream()) {
+                    format = processFeedDom(chan, doc, response.getCharset(), format, watermark);
+                }
+            }
+            if (format != null) {
+                chan.setFeedFormat(format.name());
             }
+            watermark.commit(chan);
+            Novinar.getLogger().info("stored " + watermark.getNewCount() + " items, skipped "
+                                     + watermark.getKnownCount() + " known items of " + chan);
+            Novinar.getLogger().info("applied " + (chan.getUpdatedItems() - updatedBefore)
+                                     + " updates, skipped " + (chan.getUnchangedItems() - unchangedBefore)
+                                     + " unchanged items of " + chan);
+            bodyCache.put(url, spool.getFingerprint());
+            chan.setValidators(response.getETag(), response.getLastModified());
+            chan.touch();
+            // reset existing state of the accumulated problems for this channel
+            chan.setProblems(null);
+            return true;
+        } catch (FeedHandlingException fhe) {
+            throw fhe;
         } catch (Exception e) {
             Novinar.getLogger().log(Level.SEVERE, "failed to parse feed for channel: " + chan, e);
-            if (is != null) {
-                is.close();
-            }
+            chan.touch();
             String problem = "Exception thrown while parsing feed for channel: " + e.getMessage();
             chan.setProblems(problem);
             throw new FeedHandlingException(problem);
         }
-    } // end loadFeed
+    } // end processResponse
+
+
+    /**
+     * @return format remembered in the channel, or null if there is
+     * none or the OPML file holds a name that is not a format
+     */
+    private static FeedFormat rememberedFormat(Channel chan)
+    {
+        String name = chan.getFeedFormat();
+        if (name == null) {
+            return null;
+        }
+        try {
+            return FeedFormat.valueOf(name);
+        } catch (IllegalArgumentException iae) {
+            Novinar.getLogger().warning("unknown feed format " + name + " remembered for " + chan);
+            return null;
+        }
+    }
+
+
+    /**
+     * Build the DOM tree of the feed and send it to the parser of the
+     * given format, or to the parser that accepts it.
+     *
+     * @param format format of the feed, or null if unknown
+     * @return format of the processed feed
+     */
+    private FeedFormat processFeedDom(Channel chan, InputStream is, String charset, FeedFormat format,
+                                      ItemWatermark watermark)
+        throws Exception
+    {
+        Document doc = parseFeedXml(is, charset);
+
+        // optional, but recommended read this:
+        // http://stackoverflow.com/questions/13786607/normalization-in-dom-parsing-with-java-how-does-it-work
+        doc.getDocumentElement().normalize();
+
+        Novinar.getLogger().fine("Root element :[" + doc.getDocumentElement().getNodeName() + "]");
+        FeedParser known = (format != null) ? parsers.get(format) : null;
+        if (known != null && known.accepts(doc)) {
+            Novinar.getLogger().info("Processing feed with " + known);
+            known.processFeed(chan, doc, watermark);
+            return format;
+        }
+        // the publisher might have switched to another format
+        for (Map.Entry<FeedFormat, FeedParser> parser : parsers.entrySet()) {
+            if (parser.getValue().accepts(doc)) {
+                Novinar.getLogger().info("Processing feed with " + parser.getValue());
+                parser.getValue().processFeed(chan, doc, watermark);
+                return parser.getKey();
+            }
+        }
+
+        Novinar.getLogger().severe("FeedReader doesn't know how to handle this type of feeds. Inspect: "
+                                   + chan.getLink());
+        chan.touch();
+        String problem = "FeedReader doesn't know how to handle this type of feeds.";
+        chan.setProblems(problem);
+        throw new FeedHandlingException(problem);
+    }
 
 
     public void submitLoadFeedTask(Channel chan)
         throws Exception
     {
-        threadPool.execute(() -> {
-                try {
-                    if (!Thread.currentThread().isInterrupted()) {
-                        loadFeed(chan);
+        loadFeedAsync(chan).whenComplete((processed, e) -> {
+                if (e != null) {
+                    Novinar.getLogger().severe("Problem loading channel " + chan + ": " + e.getMessage());
+                    if (!chan.hasProblems()) {
+                        chan.setProblems("Problem loading channel");
                     }
-                } catch (Exception e) {
-                    Novinar.getLogger().severe("Problem loading channel " + chan);
-                    String problem = "Problem loading channel";
-                    chan.setProblems(problem);
+                    Throwable cause = (e instanceof CompletionException && e.getCause() != null)
+                        ? e.getCause()
+                        : e;
+                    backoffPolicy.failed(chan, (cause instanceof FeedHandlingException)
+                                         ? ((FeedHandlingException) cause).getRetryAfter()
+                                         : null);
+                } else {
+                    backoffPolicy.succeeded(chan);
+                    adaptivePolling.adapt(novinar, chan);
+                    countSkippedByHints(chan);
                 }
+                refreshScheduler.reschedule(chan);
+                Novinar.getLogger().fine("per-host download statistics:\n" + hostScheduler.getHostStats());
             });
     }
 
 
+    /** Account refreshes that won't happen because the publisher
+     * hints postponed the next one.
+     */
+    private void countSkippedByHints(Channel chan)
+    {
+        Duration interval = chan.getRefreshInterval();
+        if (interval == null) {
+            return;
+        }
+        Instant regularDue = chan.getLatestUpdate().plus(interval);
+        Instant hintedDue = RefreshScheduler.nextDueTime(chan);
+        int skipped = RefreshHints.countSkipped(chan, regularDue, hintedDue, interval);
+        if (skipped > 0) {
+            int total = chan.countSkippedByHints(skipped);
+            Novinar.getLogger().info("refresh hints skip " + skipped + " refresh(es) of " + chan
+                                     + " (" + total + " so far), next one at: " + hintedDue);
+        }
+    }
+
+
     /**
      * Attempt parsing the feed XML document in several different ways and check
      * which one works.
@@ -313,10 +540,7 @@ public class FeedReader extends Thread
             }
 
             // Parse XML data into a DOM document/tree
-            final DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            dbFactory.setNamespaceAware(true);
-            final DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            final Document doc = dBuilder.parse(feedReaderSource);
+            final Document doc = XMLParsers.parse(feedReaderSource);
             return doc;
         }
         catch (Exception e) {
@@ -326,6 +550,20 @@ public class FeedReader extends Thread
     }
 
 
+    /** Forget everything remembered about the previous downloads of
+     * the channel and process all items of the feed once again. */
+    public void resyncChannel(Channel chan)
+        throws Exception
+    {
+        Novinar.getLogger().info("full resync of " + chan);
+        chan.setWatermark(null, null);
+        chan.setValidators(null, null);
+        chan.setFeedFormat(null);
+        bodyCache.remove(chan.getLink());
+        submitLoadFeedTask(chan);
+    }
+
+
     /** Refresh/download all feeds from all known channels. */
     public void loadFeeds()
         throws Exception
@@ -341,59 +579,60 @@ public class FeedReader extends Thread
 
 
     /**
-     * Entry point for the main background trhead periodically checking feeds and
-     * downloading new items.
+     * Put the given channels in the refresh queue, replacing whatever
+     * was there before.
+     *
+     * @param onBoot refresh channels that are not ignored on boot
+     * right away
+     */
+    public void scheduleChannels(List<Channel> channels, boolean onBoot)
+    {
+        refreshScheduler.scheduleAll(channels, onBoot);
+        Novinar.getLogger().info("scheduled " + refreshScheduler.size() + " channels for refresh");
+    }
+
+    /**
+     * Re-key the channel in the refresh queue after its update period
+     * or last update time has changed.
+     */
+    public void rescheduleChannel(Channel chan)
+    {
+        refreshScheduler.reschedule(chan);
+    }
+
+    /** Remove the channel from the refresh queue. */
+    public void unscheduleChannel(Channel chan)
+    {
+        refreshScheduler.unschedule(chan);
+    }
+
+    /** Forget what was remembered about the downloads of the removed
+     * channel, a channel added later with the same link must not
+     * skip its first download. */
+    public void forgetChannel(Channel chan)
+    {
+        bodyCache.remove(chan.getLink());
+    }
+
+
+    /**
+     * Entry point for the main background thread refreshing feeds.
      *
+     * <p>
+     * Channels wait in the refresh queue ordered by their due time,
+     * the thread sleeps until the earliest one is due. Once the
+     * refresh of a channel is over it is put back in the queue.
      */
-    // todo: the thread must hang in background, periodically checking
-    // for the channels that have to be updated
     @Override
     public void run()
     {
         Novinar.getLogger().info("FeedReader thread is running");
-        boolean firstRound = true;
+        scheduleChannels(novinar.getChannels(), true);
         while (!Thread.currentThread().isInterrupted()) {
             try {
-                Instant nextRound = Instant.now().plus(UpdatePeriod.DEFAULT_UPDATE_PERIOD.getDuration());
-                Channel nextRoundChannel = null;
-
-                List<Channel> channels = novinar.getChannels();
-
-                for (Channel channel : channels) {
-                    if (Thread.currentThread().isInterrupted()) {
-                        Novinar.getLogger().info("FeedReader thread interrupted. Breaking the cycle");
-                        return;
-                    }
-                    try {
-                        Instant lastUpdate = channel.getLatestUpdate();
-                        UpdatePeriod updatePeriod = channel.getUpdatePeriod();
-
-                        // when this channel should be updated?
-                        if (updatePeriod != UpdatePeriod.NEVER) {
-                            Instant whenUp = lastUpdate.plus(updatePeriod.getDuration());
-
-                            Novinar.getLogger().info("channel: " + channel + " must be updated at: " + whenUp);
-                            if ((firstRound && (!channel.getIgnoreOnBoot())) || whenUp.isBefore(Instant.now())) {
-                                submitLoadFeedTask(channel);
-                            }
-
-                            Instant nextUpdate = Instant.now().plus(updatePeriod.getDuration());
-                            if (nextUpdate.isBefore(nextRound)) {
-                                nextRound = whenUp;
-                                nextRoundChannel = channel;
-                            }
-                        }
-                    } catch (Exception e) {
-                        Novinar.getLogger().log(Level.SEVERE, "failed to load channel" + channel, e);
-                    }
-                } // finished processing channels
-
-                firstRound = false;
-                Instant now = Instant.now();
-                Duration toSleep = Duration.between(now, nextRound);
-                Novinar.getLogger().info("sleeping for: " + toSleep + " (now is: " + now + " will wake up at: "
-                                         + nextRound + ")" + " to update: " + nextRoundChannel);
-                Thread.sleep(toSleep.toMillis());
+                Channel channel = refreshScheduler.take();
+                Novinar.getLogger().info("channel is due for refresh: " + channel);
+                submitLoadFeedTask(channel);
             } catch (InterruptedException ie) {
                 Novinar.getLogger().log(Level.INFO, "FeedReader thread got interrupted");
                 return;
@@ -417,6 +656,7 @@ public class FeedReader extends Thread
                 Novinar.getLogger().severe("cancel non-finished tasks");
             }
             threadPool.shutdownNow();
+            hostScheduler.close();
         }
 
         interrupt();
@@ -0,0 +1,198 @@
+package org.bb.vityok.novinar.feed;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.HttpURLConnection;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+import org.bb.vityok.novinar.core.Novinar;
+
+/** Outcome of a single feed download attempt.
+ *
+ * <p>Besides the input stream with the feed contents it carries the
+ * cache validators (<tt>ETag</tt> and <tt>Last-Modified</tt>) sent by
+ * the server. They are stored in the Channel only after the feed has
+ * been processed successfully, so that a broken download is not
+ * "validated" on the next conditional request.
+ *
+ * <p>Compressed responses are decoded on the fly, the body stream
+ * returns plain feed contents. The decoder is set up only when the
+ * body is asked for, by the thread that is going to read it: the
+ * gzip header is read right away, and that must not block the thread
+ * of the HTTP client. Bytes are counted both as received over the
+ * wire and after decoding.
+ *
+ * <p>The response must be released when it has been processed, see
+ * release().
+ */
+public class FeedResponse
+{
+    private final int status;
+    private final CountingInputStream wireBody;
+    private CountingInputStream body;
+    private final String contentEncoding;
+    private final String charset;
+    private final String etag;
+    private final String lastModified;
+    private Duration retryAfter;
+    private Duration cacheLifetime;
+    private Runnable onRelease;
+
+    /**
+     * @param rawBody response stream as received from the server, or null
+     * @param contentEncoding value of the Content-Encoding header, or null
+     * @param charset charset parameter of the Content-Type header, or null
+     */
+    public FeedResponse(int status, InputStream rawBody,
+                        String contentEncoding, String charset,
+                        String etag, String lastModified)
+    {
+        this.status = status;
+        this.contentEncoding = contentEncoding;
+        this.charset = charset;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        wireBody = (rawBody == null) ? null : new CountingInputStream(rawBody);
+    }
+
+    /** HTTP response status code. */
+    public int getStatus() { return status; }
+
+    /** Decoded feed contents, <tt>null</tt> when the server replied
+     * with 304 or an error.
+     *
+     * @throws IOException if the body can not be decoded, it is
+     * closed then
+     */
+    public synchronized InputStream getBody()
+        throws IOException
+    {
+        if (body == null && wireBody != null) {
+            try {
+                body = new CountingInputStream(ContentCodecs.decode(contentEncoding, wireBody));
+            } catch (IOException ioe) {
+                wireBody.close();
+                throw ioe;
+            }
+        }
+        return body;
+    }
+
+    public String getContentEncoding() { return contentEncoding; }
+
+    /** Character set of the feed as declared by the server, or
+     * <tt>null</tt> to let the XML parser detect it. */
+    public String getCharset() { return charset; }
+
+    public String getETag() { return etag; }
+
+    public String getLastModified() { return lastModified; }
+
+    /** How long the server asked us to wait before the next request
+     * (Retry-After header of 429 and 503 replies), or <tt>null</tt>.
+     */
+    public Duration getRetryAfter() { return retryAfter; }
+
+    public void setRetryAfter(Duration retryAfter) { this.retryAfter = retryAfter; }
+
+    /** How long the response may be cached according to the
+     * Cache-Control or Expires headers, or <tt>null</tt>.
+     */
+    public Duration getCacheLifetime() { return cacheLifetime; }
+
+    public void setCacheLifetime(Duration cacheLifetime) { this.cacheLifetime = cacheLifetime; }
+
+    /** Set the callback run when the response is released. */
+    public synchronized void setOnRelease(Runnable onRelease) { this.onRelease = onRelease; }
+
+    /** Close the body, whether it has been read or not, and run the
+     * release callback. Only the first call does anything.
+     */
+    public void release()
+    {
+        Runnable callback;
+        synchronized (this) {
+            callback = onRelease;
+            onRelease = null;
+        }
+        if (wireBody != null) {
+            try {
+                wireBody.close();
+            } catch (IOException ioe) {
+                Novinar.getLogger().fine("failed to close response body: " + ioe);
+            }
+        }
+        if (callback != null) {
+            callback.run();
+        }
+    }
+
+    /** Server confirmed that our copy of the feed is still fresh. */
+    public boolean isNotModified() {
+        return status == HttpURLConnection.HTTP_NOT_MODIFIED;
+    }
+
+    /** Bytes received over the wire so far. */
+    public long getCompressedBytes() {
+        return (wireBody == null) ? 0 : wireBody.getCount();
+    }
+
+    /** Bytes of the decoded feed contents read so far. */
+    public long getUncompressedBytes() {
+        return (body == null) ? 0 : body.getCount();
+    }
+
+    /** Parses the value of the Retry-After header: either a number of
+     * seconds or an HTTP date.
+     *
+     * @return delay relative to now or <tt>null</tt> if the value
+     * can not be parsed.
+     */
+    public static Duration parseRetryAfter(String value, Instant now) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        String v = value.trim();
+        try {
+            long seconds = Long.parseLong(v);
+            return Duration.ofSeconds(Math.max(0, seconds));
+        } catch (NumberFormatException nfe) {
+            // not a number, must be a date then
+        }
+        try {
+            Instant when = ZonedDateTime.parse(v, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            Duration delay = Duration.between(now, when);
+            return delay.isNegative() ? Duration.ZERO : delay;
+        } catch (DateTimeParseException pe) {
+            return null;
+        }
+    }
+
+    /** Extracts the charset parameter from the Content-Type header
+     * value.
+     *
+     * @return charset name or <tt>null</tt> if it is not specified.
+     */
+    public static String parseCharset(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        for (String param : contentType.split(";")) {
+            String p = param.trim();
+            if (p.regionMatches(true, 0, "charset=", 0, 8)) {
+                String cs = p.substring(8).trim();
+                if (cs.length() > 1 && cs.startsWith("\"") && cs.endsWith("\"")) {
+                    cs = cs.substring(1, cs.length() - 1);
+                }
+                return cs.isEmpty() ? null : cs;
+            }
+        }
+        return null;
+    }
+}
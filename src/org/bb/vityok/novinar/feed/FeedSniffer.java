@@ -0,0 +1,70 @@
+package org.bb.vityok.novinar.feed;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.bb.vityok.novinar.core.XMLParsers;
+
+/** Detects the feed format by peeking at the root element.
+ *
+ * <p>Only the beginning of the document is read, up to the first
+ * start element. Error pages and other documents that are not feeds
+ * are rejected after a few kilobytes instead of after a full parse,
+ * and the matching parser is known before any tree is built.
+ */
+public class FeedSniffer
+{
+    /** Number of bytes at the beginning of the document that are
+     * examined. */
+    public static final int SNIFF_LIMIT = 8 * 1024;
+
+    private FeedSniffer() {}
+
+    /** Detect the format of the feed.
+     *
+     * @param encoding character set of the feed, or <tt>null</tt> to
+     * let the parser detect it
+     * @return format of the feed, or <tt>null</tt> if the root element
+     * is not within the first SNIFF_LIMIT bytes
+     * @throws FeedHandlingException when the document is not XML or
+     * its root element doesn't belong to any known feed format
+     */
+    public static FeedFormat sniff(byte[] body, String encoding)
+        throws FeedHandlingException
+    {
+        boolean truncated = body.length > SNIFF_LIMIT;
+        InputStream is = new ByteArrayInputStream(body, 0, Math.min(body.length, SNIFF_LIMIT));
+        XMLStreamReader reader = null;
+        try {
+            reader = XMLParsers.createXMLStreamReader(is, encoding);
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    FeedFormat format = FeedFormat.of(reader.getNamespaceURI(), reader.getLocalName());
+                    if (format == null) {
+                        throw new FeedHandlingException("not a feed, root element: " + reader.getName());
+                    }
+                    return format;
+                }
+            }
+            throw new FeedHandlingException("not a feed, no root element");
+        } catch (XMLStreamException xse) {
+            if (truncated) {
+                // the prolog is longer than the part we have looked at
+                return null;
+            }
+            throw new FeedHandlingException("not a feed, invalid XML: " + xse.getMessage());
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException xse) {
+                    // nothing to release
+                }
+            }
+        }
+    }
+}
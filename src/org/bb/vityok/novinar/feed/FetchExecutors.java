@@ -0,0 +1,127 @@
+package org.bb.vityok.novinar.feed;
+
+import java.lang.reflect.Method;
+
+import java.util.List;
+
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import java.util.logging.Level;
+
+import org.bb.vityok.novinar.core.Novinar;
+
+/** Factory of the executors running feed loading tasks.
+ *
+ * <p>Two modes are supported:
+ *
+ * <ul>
+ * <li><tt>fixed</tt> -- a fixed pool of platform threads (default)
+ * <li><tt>virtual</tt> -- a new virtual thread for every task, the
+ * number of tasks running at once is capped by a semaphore
+ * </ul>
+ *
+ * <p>Virtual threads are available since Java 21. The executor is
+ * looked up reflectively, on older runtimes the virtual mode falls
+ * back to a fixed pool as large as the semaphore limit.
+ */
+public class FetchExecutors
+{
+    public static final String MODE_FIXED = "fixed";
+    public static final String MODE_VIRTUAL = "virtual";
+
+    public static final int DEFAULT_POOL_SIZE = 3;
+    public static final int DEFAULT_VIRTUAL_LIMIT = 64;
+
+    private FetchExecutors() {}
+
+    /** Create an executor for the given mode.
+     *
+     * @param limit maximum number of tasks running at once in the
+     * virtual mode
+     */
+    public static ExecutorService create(String mode, int limit)
+    {
+        if (MODE_VIRTUAL.equalsIgnoreCase(mode)) {
+            ExecutorService perTask = newVirtualThreadPerTaskExecutor();
+            if (perTask != null) {
+                Novinar.getLogger().info("loading feeds on virtual threads, at most " + limit + " at once");
+                return new BoundedExecutor(perTask, limit);
+            }
+            Novinar.getLogger().warning("virtual threads are not supported by this runtime,"
+                                        + " using a pool of " + limit + " threads");
+            return Executors.newFixedThreadPool(limit);
+        }
+        return Executors.newFixedThreadPool(DEFAULT_POOL_SIZE);
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor()
+    {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (NoSuchMethodException nsme) {
+            return null;
+        } catch (Exception e) {
+            // present, but not enabled (preview feature of Java 19 and 20)
+            Novinar.getLogger().log(Level.WARNING, "failed to create virtual threads executor", e);
+            return null;
+        }
+    }
+
+    /** Runs every task in its own thread of the delegate executor,
+     * but only as many at once as the semaphore allows.
+     *
+     * <p>Tasks wait for the permit in their own (virtual) thread, so
+     * waiting costs next to nothing.
+     */
+    private static class BoundedExecutor extends AbstractExecutorService
+    {
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+
+        BoundedExecutor(ExecutorService delegate, int limit)
+        {
+            this.delegate = delegate;
+            this.permits = new Semaphore(Math.max(1, limit));
+        }
+
+        @Override
+        public void execute(Runnable task)
+        {
+            delegate.execute(() -> {
+                    // the task must run even when interrupted, or the
+                    // future waiting for it would never complete; the
+                    // interrupt status is kept for the task to see
+                    permits.acquireUninterruptibly();
+                    try {
+                        task.run();
+                    } finally {
+                        permits.release();
+                    }
+                });
+        }
+
+        @Override
+        public void shutdown() { delegate.shutdown(); }
+
+        @Override
+        public List<Runnable> shutdownNow() { return delegate.shutdownNow(); }
+
+        @Override
+        public boolean isShutdown() { return delegate.isShutdown(); }
+
+        @Override
+        public boolean isTerminated() { return delegate.isTerminated(); }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit)
+            throws InterruptedException
+        {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
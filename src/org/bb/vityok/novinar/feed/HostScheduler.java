@@ -0,0 +1,214 @@
+package org.bb.vityok.novinar.feed;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import java.util.function.Function;
+
+import org.bb.vityok.novinar.core.Novinar;
+
+/** Politeness scheduler for the feed downloads.
+ *
+ * <p>Limits the number of concurrent requests to the same host and
+ * enforces a minimum delay between starting two requests to the same
+ * host. Requests to different hosts do not wait for each other.
+ *
+ * <p>A request keeps its slot until it is released, not just until
+ * its future completes: the future of a download completes with the
+ * headers, and the body is read from the connection afterwards.
+ *
+ * <p>Queue depth and waiting time of every host are written to the
+ * log and are available through getHostStats.
+ */
+public class HostScheduler
+{
+    public static final int DEFAULT_MAX_PER_HOST = 2;
+    public static final long DEFAULT_MIN_DELAY_MILLIS = 1000;
+
+    private final int maxPerHost;
+    private final long minDelayMillis;
+    private final ScheduledExecutorService timer;
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+
+    /** Pending and running requests to a single host. */
+    private static class HostQueue
+    {
+        final String host;
+        final Deque<Pending<?>> pending = new ArrayDeque<>();
+        int active = 0;
+        long lastStart = 0;
+        boolean wakeupScheduled = false;
+        // statistics
+        long started = 0;
+        long totalWaitMillis = 0;
+        long maxWaitMillis = 0;
+
+        HostQueue(String host) { this.host = host; }
+    }
+
+    private static class Pending<T>
+    {
+        final Function<Runnable, CompletableFuture<T>> task;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final long enqueued = System.currentTimeMillis();
+
+        Pending(Function<Runnable, CompletableFuture<T>> task) { this.task = task; }
+
+        void start(Runnable onDone) {
+            AtomicBoolean released = new AtomicBoolean();
+            Runnable release = () -> {
+                if (released.compareAndSet(false, true)) {
+                    onDone.run();
+                }
+            };
+            CompletableFuture<T> running;
+            try {
+                running = task.apply(release);
+            } catch (Exception e) {
+                running = CompletableFuture.failedFuture(e);
+            }
+            running.whenComplete((value, failure) -> {
+                    if (failure != null) {
+                        // nobody is going to release a failed request
+                        release.run();
+                        result.completeExceptionally(failure);
+                    } else {
+                        result.complete(value);
+                    }
+                });
+        }
+    }
+
+    public HostScheduler()
+    {
+        this(DEFAULT_MAX_PER_HOST, DEFAULT_MIN_DELAY_MILLIS);
+    }
+
+    public HostScheduler(int maxPerHost, long minDelayMillis)
+    {
+        this.maxPerHost = Math.max(1, maxPerHost);
+        this.minDelayMillis = Math.max(0, minDelayMillis);
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "Host scheduler timer");
+                t.setDaemon(true);
+                return t;
+            });
+    }
+
+    /** Queue a request to the given host.
+     *
+     * @param task starts the request when the host is ready for it.
+     * It gets the callback that frees the slot of the request, which
+     * must be run once the request is done with the host. Requests
+     * that fail are released by the scheduler.
+     * @return future completed with the result of the request
+     */
+    public <T> CompletableFuture<T> submit(String host, Function<Runnable, CompletableFuture<T>> task)
+    {
+        Pending<T> pending = new Pending<>(task);
+        List<Runnable> toStart;
+        synchronized (this) {
+            HostQueue q = hosts.computeIfAbsent(host, HostQueue::new);
+            q.pending.add(pending);
+            if (q.pending.size() > 1) {
+                Novinar.getLogger().fine("host " + host + " queue depth: " + q.pending.size()
+                                         + " active: " + q.active);
+            }
+            toStart = dispatch(q);
+        }
+        toStart.forEach(Runnable::run);
+        return pending.result;
+    }
+
+    /** Pick requests that may start right now. Must be called while
+     * holding the lock, the returned requests are to be started
+     * after releasing it.
+     */
+    private List<Runnable> dispatch(HostQueue q)
+    {
+        List<Runnable> toStart = new LinkedList<>();
+        while (!q.pending.isEmpty() && q.active < maxPerHost && !q.wakeupScheduled) {
+            long now = System.currentTimeMillis();
+            long wait = q.lastStart + minDelayMillis - now;
+            if (wait > 0) {
+                q.wakeupScheduled = true;
+                timer.schedule(() -> wakeup(q), wait, TimeUnit.MILLISECONDS);
+                break;
+            }
+            Pending<?> pending = q.pending.poll();
+            q.active++;
+            q.lastStart = now;
+            q.started++;
+            long waited = now - pending.enqueued;
+            q.totalWaitMillis += waited;
+            q.maxWaitMillis = Math.max(q.maxWaitMillis, waited);
+            if (waited > 0) {
+                Novinar.getLogger().info("host " + q.host + ": request waited " + waited
+                                         + " ms, still queued: " + q.pending.size());
+            }
+            toStart.add(() -> pending.start(() -> finished(q)));
+        }
+        return toStart;
+    }
+
+    private void wakeup(HostQueue q)
+    {
+        List<Runnable> toStart;
+        synchronized (this) {
+            q.wakeupScheduled = false;
+            toStart = dispatch(q);
+        }
+        toStart.forEach(Runnable::run);
+    }
+
+    private void finished(HostQueue q)
+    {
+        List<Runnable> toStart;
+        synchronized (this) {
+            q.active--;
+            toStart = dispatch(q);
+        }
+        toStart.forEach(Runnable::run);
+    }
+
+    /** Number of requests waiting for the given host. */
+    public synchronized int getQueueDepth(String host)
+    {
+        HostQueue q = hosts.get(host);
+        return (q == null) ? 0 : q.pending.size();
+    }
+
+    /** Human-readable per-host statistics: queue depth, running
+     * requests and waiting times.
+     */
+    public synchronized String getHostStats()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (HostQueue q : hosts.values()) {
+            sb.append(q.host)
+                .append(": queued=").append(q.pending.size())
+                .append(" active=").append(q.active)
+                .append(" started=").append(q.started)
+                .append(" avgWaitMs=").append(q.started == 0 ? 0 : q.totalWaitMillis / q.started)
+                .append(" maxWaitMs=").append(q.maxWaitMillis)
+                .append('\n');
+        }
+        return sb.toString();
+    }
+
+    public void close()
+    {
+        timer.shutdownNow();
+    }
+}
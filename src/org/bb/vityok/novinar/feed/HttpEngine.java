@@ -0,0 +1,194 @@
+package org.bb.vityok.novinar.feed;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.URI;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.bb.vityok.novinar.core.Channel;
+import org.bb.vityok.novinar.core.Novinar;
+
+/** Non-blocking HTTP engine for downloading feeds.
+ *
+ * <p>All downloads go through a single shared HttpClient, which keeps
+ * connections to the same host alive between requests and uses
+ * HTTP/2 where the server supports it. Redirects and timeouts are
+ * handled here for all feeds.
+ *
+ * <p>Redirects are followed by the engine itself, up to MAX_REDIRECTS
+ * of them and from HTTPS to HTTP too. The NORMAL policy of HttpClient
+ * refuses the latter, and some feeds have moved that way.
+ *
+ * <p>The response is handed over as soon as its headers arrive,
+ * nothing is read from the body on the threads of the HttpClient. The
+ * body is decoded by the worker that reads it from the connection.
+ */
+public class HttpEngine
+{
+    public static final String USER_AGENT = "Novinar RSS feed reader";
+    public static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(15);
+    public static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    /** Number of redirects followed at most for a single download. */
+    public static final int MAX_REDIRECTS = 5;
+
+    private final HttpClient client;
+
+    public HttpEngine()
+    {
+        client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            // see send()
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .connectTimeout(CONNECT_TIMEOUT)
+            .build();
+    }
+
+    /** Download the feed of the given channel.
+     *
+     * <p>Cache validators remembered from the previous download are
+     * sent along, so that the server can reply with "304 Not
+     * Modified" instead of sending the whole feed again.
+     */
+    public CompletableFuture<FeedResponse> fetch(Channel chan)
+    {
+        return fetch(chan.getLink(), chan.getETag(), chan.getLastModified());
+    }
+
+    /** Download the feed from the given URL.
+     *
+     * @param etag value for the If-None-Match header, or null
+     * @param lastModified value for the If-Modified-Since header, or null
+     * @return future completed with the server response after the
+     * redirects, whatever its status code is
+     */
+    public CompletableFuture<FeedResponse> fetch(String url, String etag, String lastModified)
+    {
+        try {
+            return send(new URI(url), etag, lastModified, 0);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private CompletableFuture<FeedResponse> send(URI uri, String etag, String lastModified,
+                                                 int redirects)
+    {
+        String url = uri.toString();
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri);
+        builder.timeout(REQUEST_TIMEOUT)
+            .header("User-Agent", USER_AGENT)
+            .header("Accept-Encoding", ContentCodecs.getAcceptEncoding())
+            .GET();
+        if (etag != null) {
+            builder.header("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            builder.header("If-Modified-Since", lastModified);
+        }
+
+        Novinar.getLogger().info("Sending 'GET' request to URL : " + url);
+        return client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream())
+            .thenCompose(response -> {
+                    String location = response.headers().firstValue("Location").orElse(null);
+                    if (!isRedirect(response.statusCode()) || location == null) {
+                        return CompletableFuture.completedFuture(toFeedResponse(url, response,
+                                                                                etag, lastModified));
+                    }
+                    discard(response.body());
+                    if (redirects >= MAX_REDIRECTS) {
+                        return CompletableFuture.failedFuture(new IOException("more than " + MAX_REDIRECTS
+                                                                              + " redirects from " + url));
+                    }
+                    try {
+                        // the location may be relative; the target
+                        // may be HTTP for an HTTPS feed and vice versa
+                        URI target = uri.resolve(location);
+                        Novinar.getLogger().info("Response Code : " + response.statusCode() + " for " + url
+                                                 + ", redirected to " + target);
+                        return send(target, etag, lastModified, redirects + 1);
+                    } catch (Exception e) {
+                        return CompletableFuture.failedFuture(e);
+                    }
+                });
+    }
+
+    private static boolean isRedirect(int status)
+    {
+        switch (status) {
+        case 301: // Moved Permanently
+        case 302: // Found
+        case 303: // See Other
+        case 307: // Temporary Redirect
+        case 308: // Permanent Redirect
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private FeedResponse toFeedResponse(String url, HttpResponse<InputStream> response,
+                                        String etag, String lastModified)
+    {
+        int status = response.statusCode();
+        Novinar.getLogger().info("Response Code : " + status + " for " + url
+                                 + " (" + response.version() + ")");
+        HttpHeaders headers = response.headers();
+        switch (status) {
+        case 200: {
+            FeedResponse ok = new FeedResponse(status,
+                                               response.body(),
+                                               headers.firstValue("Content-Encoding").orElse(null),
+                                               FeedResponse.parseCharset(headers.firstValue("Content-Type").orElse(null)),
+                                               headers.firstValue("ETag").orElse(null),
+                                               headers.firstValue("Last-Modified").orElse(null));
+            ok.setCacheLifetime(cacheLifetime(headers));
+            return ok;
+        }
+        case 304: {
+            discard(response.body());
+            FeedResponse notModified = new FeedResponse(status, null, null, null, etag, lastModified);
+            notModified.setCacheLifetime(cacheLifetime(headers));
+            return notModified;
+        }
+        default: {
+            discard(response.body());
+            FeedResponse failed = new FeedResponse(status, null, null, null, null, null);
+            // 429 Too Many Requests and 503 Service Unavailable
+            // tell when we may come back
+            if (status == 429 || status == 503) {
+                failed.setRetryAfter(FeedResponse.parseRetryAfter(headers.firstValue("Retry-After").orElse(null),
+                                                                  Instant.now()));
+            }
+            return failed;
+        }
+        }
+    }
+
+    /** Close the body that is not going to be read, the connection
+     * can then be reused. */
+    private static void discard(InputStream body)
+    {
+        try {
+            body.close();
+        } catch (IOException ioe) {
+            Novinar.getLogger().fine("failed to discard response body: " + ioe);
+        }
+    }
+
+    private static Duration cacheLifetime(HttpHeaders headers)
+    {
+        return RefreshHints.cacheLifetime(headers.firstValue("Cache-Control").orElse(null),
+                                          headers.firstValue("Expires").orElse(null),
+                                          headers.firstValue("Date").orElse(null));
+    }
+}
@@ -0,0 +1,70 @@
+package org.bb.vityok.novinar.feed;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bb.vityok.novinar.core.Channel;
+import org.bb.vityok.novinar.core.NewsItem;
+import org.bb.vityok.novinar.core.Novinar;
+
+/** Collects the parsed items of a feed and hands them over to Novinar
+ * in batches.
+ *
+ * <p>By default the whole feed is a single batch, so the database
+ * stores it as a unit. With the org.bb.vityok.novinar.ingest_batch
+ * system property set to N, items are handed over in chunks of at
+ * most N items, which bounds the memory held by very large feeds.
+ *
+ * <p>The parsers add items one by one and must call flush() once the
+ * feed is over.
+ */
+public class ItemBatch
+{
+    private final Novinar novinar;
+    private final Channel chan;
+    private final int size;
+    private List<NewsItem> items = new ArrayList<>();
+    private int batches = 0;
+
+    public ItemBatch(Novinar novinar, Channel chan)
+    {
+        this(novinar, chan, Integer.getInteger(Novinar.PROP_INGEST_BATCH, 0));
+    }
+
+    /** @param size maximum number of items in a batch, 0 or less to
+     * hand over the whole feed at once */
+    public ItemBatch(Novinar novinar, Channel chan, int size)
+    {
+        this.novinar = novinar;
+        this.chan = chan;
+        this.size = size;
+    }
+
+    public void add(NewsItem item)
+        throws Exception
+    {
+        items.add(item);
+        if (size > 0 && items.size() >= size) {
+            flush();
+        }
+    }
+
+    /** Hand over the items collected so far. */
+    public void flush()
+        throws Exception
+    {
+        if (items.isEmpty()) {
+            return;
+        }
+        List<NewsItem> batch = items;
+        items = new ArrayList<>();
+        batches++;
+        novinar.insertOrUpdateItems(chan, batch);
+    }
+
+    /** @return number of batches handed over so far */
+    public int getBatches()
+    {
+        return batches;
+    }
+}
@@ -0,0 +1,108 @@
+package org.bb.vityok.novinar.feed;
+
+import java.time.Instant;
+
+import org.bb.vityok.novinar.core.Channel;
+import org.bb.vityok.novinar.core.NewsItem;
+
+/** Tells which items of the feed were already stored by the previous
+ * refresh.
+ *
+ * <p>The newest item of every successful refresh (its GUID, or the
+ * link if there is no GUID, and its timestamp) is remembered in the
+ * channel. Feeds list the items newest first, so once the remembered
+ * item shows up again all the following items are known and don't
+ * need to be stored again.
+ *
+ * <p>The position alone is not trusted: an item is treated as known
+ * only if it follows the remembered item <em>and</em> is not newer
+ * than it. An item that was inserted lower in the list or got a new
+ * timestamp is still stored. When the remembered item has dropped off
+ * the feed, all items are stored.
+ *
+ * <p>One instance is used for a single refresh of a single channel.
+ */
+public class ItemWatermark
+{
+    private final String link;
+    private final Instant date;
+    private final boolean enabled;
+    private final Instant started = Instant.now();
+
+    private boolean reached = false;
+    private String newestLink = null;
+    private Instant newestDate = null;
+    private int knownCount = 0;
+    private int newCount = 0;
+
+    /** @param enabled when false, no item is treated as known but the
+     * newest item is still tracked and can be committed */
+    public ItemWatermark(Channel chan, boolean enabled)
+    {
+        this.link = chan.getWatermarkLink();
+        this.date = chan.getWatermarkDate();
+        this.enabled = enabled && link != null && date != null;
+    }
+
+    /** Check the next item of the feed.
+     *
+     * @return true if the item was stored by a previous refresh and
+     * can be skipped
+     */
+    public boolean isKnown(NewsItem item)
+    {
+        String itemLink = key(item);
+        Instant itemDate = item.getDateCalendar();
+
+        // items without a timestamp of their own get the current
+        // time, they can't serve as a watermark
+        if (itemLink != null && !itemLink.isEmpty() && itemDate != null
+            && itemDate.isBefore(started)
+            && (newestDate == null || itemDate.isAfter(newestDate))) {
+            newestLink = itemLink;
+            newestDate = itemDate;
+        }
+
+        boolean known = false;
+        if (enabled && itemDate != null) {
+            if (!reached && link.equals(itemLink) && !itemDate.isAfter(date)) {
+                reached = true;
+            }
+            known = reached && !itemDate.isAfter(date);
+        }
+        if (known) {
+            knownCount++;
+        } else {
+            newCount++;
+        }
+        return known;
+    }
+
+    /** @return identity of the item: the GUID, which doesn't change
+     * when the link does, or the link */
+    private static String key(NewsItem item)
+    {
+        return (item.getGuid() != null) ? item.getGuid() : item.getLink();
+    }
+
+    /** Remember the newest item of this refresh in the channel. Must
+     * be called only after the whole feed was processed. */
+    public void commit(Channel chan)
+    {
+        if (newestLink != null) {
+            chan.setWatermark(newestLink, newestDate);
+        }
+    }
+
+    /** @return number of items that were skipped as known */
+    public int getKnownCount()
+    {
+        return knownCount;
+    }
+
+    /** @return number of items handed over for storing */
+    public int getNewCount()
+    {
+        return newCount;
+    }
+}
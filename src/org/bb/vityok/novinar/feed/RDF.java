@@ -42,11 +42,11 @@ public class RDF
     /** Tries to extract entry timestamp as specified in a Dublic Core
      * date element.
      */
-    public Instant extractTimestamp(Element entry) {
+    public Instant extractTimestamp(Channel chan, Element entry) {
         NodeList timestamps = entry.getElementsByTagName("dc:date");
         if (timestamps.getLength() > 0) {
             String tsStr = timestamps.item(0).getTextContent();
-            Instant ts = parseTimestamp(tsStr);
+            Instant ts = parseTimestamp(chan, tsStr);
             if (ts != null) {
                 return ts;
             }
@@ -59,7 +59,7 @@ public class RDF
     }
 
 
-    public void processFeed(Channel chan, Document doc)
+    public void processFeed(Channel chan, Document doc, ItemWatermark watermark)
         throws Exception
     {
         Element docElement = doc.getDocumentElement();
@@ -76,12 +76,14 @@ public class RDF
             Novinar.getLogger().info("channel title: " + cTitle);
             Novinar.getLogger().info("channel link: " + cLink);
             Novinar.getLogger().info("channel description: " + cDescription);
+            RefreshHints.extract(chan, channelElement);
 
             NodeList itemsList = docElement.getElementsByTagName("item");
 
             Novinar.getLogger().info("got " + itemsList.getLength() + " items in description");
 
             Instant oldestTimestamp = null;
+            ItemBatch batch = new ItemBatch(novinar, chan);
 
             for (int i = 0; i < itemsList.getLength(); i++) {
                 Element item = (Element) itemsList.item(i);
@@ -96,10 +98,11 @@ public class RDF
                     Novinar.getLogger().severe("failed to extract description: " + item);
                 }
 
-                Instant iTs = extractTimestamp(item);
+                Instant iTs = extractTimestamp(chan, item);
                 NewsItem newsItem = new NewsItem();
                 newsItem.setTitle(iTitle);
                 newsItem.setLink(iLink);
+                newsItem.setGuid(normalizeGuid(item.getAttributeNS(RDF_NS, "about")));
                 newsItem.setDescription(iDescription);
                 newsItem.setDateCalendar(iTs);
 
@@ -110,9 +113,12 @@ public class RDF
 
                 String iCreator = extractCreator(item);
                 newsItem.setCreator(iCreator);
-                novinar.insertOrUpdateItem(chan, newsItem);
+                if (!watermark.isKnown(newsItem)) {
+                    batch.add(newsItem);
+                }
             }
 
+            batch.flush();
             novinar.cleanupChannel(chan, oldestTimestamp);
         }
     }
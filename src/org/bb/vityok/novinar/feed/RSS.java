@@ -37,11 +37,11 @@ public class RSS
         }
     }
 
-    public Instant extractTimestamp(Element item) {
+    public Instant extractTimestamp(Channel chan, Element item) {
         NodeList pubDates = item.getElementsByTagName("pubDate");
         if (pubDates.getLength() > 0) {
             String tsStr = pubDates.item(0).getTextContent();
-            Instant ts = parseTimestamp(tsStr);
+            Instant ts = parseTimestamp(chan, tsStr);
             if (ts != null) {
                 return ts;
             }
@@ -53,7 +53,7 @@ public class RSS
     }
 
     @Override
-    public void processFeed(Channel chan, Document doc)
+    public void processFeed(Channel chan, Document doc, ItemWatermark watermark)
 	throws Exception
     {
 	Element docElement = doc.getDocumentElement();
@@ -70,12 +70,14 @@ public class RSS
 	    Novinar.getLogger().info("channel title: " + cTitle);
 	    Novinar.getLogger().info("channel link: " + cLink);
 	    Novinar.getLogger().info("channel description: " + cDescription);
+	    RefreshHints.extract(chan, channelElement);
 
 	    NodeList itemsList = docElement.getElementsByTagName("item");
 
 	    Novinar.getLogger().info("got " + itemsList.getLength() + " items in description");
 
             Instant oldestTimestamp = null;
+            ItemBatch batch = new ItemBatch(novinar, chan);
 
 	    for (int i = 0; i < itemsList.getLength(); i++) {
 		Element item = (Element) itemsList.item(i);
@@ -93,7 +95,7 @@ public class RSS
                 } else {
                     Novinar.getLogger().severe("failed to extract description: " + item);
                 }
-                Instant iTs = extractTimestamp(item);
+                Instant iTs = extractTimestamp(chan, item);
                 // some feeds have entries without titles. For example LJ/RSS
                 String iTitle = "";
                 if (item.getElementsByTagName("title").getLength() > 0) {
@@ -111,6 +113,7 @@ public class RSS
 		NewsItem newsItem = new NewsItem();
 		newsItem.setTitle(iTitle);
 		newsItem.setLink(iLink);
+		newsItem.setGuid(extractGuid(item, "guid"));
 		newsItem.setDescription(iDescription);
                 newsItem.setDateCalendar(iTs);
 
@@ -122,9 +125,12 @@ public class RSS
                 String iCreator = extractCreator(item);
                 newsItem.setCreator(iCreator);
                 
-		novinar.insertOrUpdateItem(chan, newsItem);
+		if (!watermark.isKnown(newsItem)) {
+		    batch.add(newsItem);
+		}
 	    }
 
+            batch.flush();
             novinar.cleanupChannel(chan, oldestTimestamp);
 	}
     }
@@ -0,0 +1,261 @@
+package org.bb.vityok.novinar.feed;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import org.bb.vityok.novinar.core.Channel;
+import org.bb.vityok.novinar.core.Novinar;
+
+/** Refresh hints given by the feed publishers.
+ *
+ * <p>Feeds may declare how often they change: RSS <tt>ttl</tt>, the
+ * syndication module <tt>sy:updatePeriod</tt> and
+ * <tt>sy:updateFrequency</tt>, and the HTTP Cache-Control and Expires
+ * headers. They may also ask not to be read at certain hours or days
+ * with RSS <tt>skipHours</tt> and <tt>skipDays</tt>.
+ *
+ * <p>Hints can only postpone a refresh: the update period chosen by
+ * the user remains the shortest interval between two refreshes, and
+ * the hinted interval is capped at MAX_HINT.
+ */
+public class RefreshHints
+{
+    /** Publishers are not trusted to postpone refreshes longer than
+     * this. */
+    public static final Duration MAX_HINT = Duration.ofDays(7);
+
+    private RefreshHints() {}
+
+    /** Interval until the next refresh taking publisher hints into
+     * account.
+     *
+     * @param interval refresh interval chosen by the user
+     */
+    public static Duration effectiveInterval(Channel chan, Duration interval)
+    {
+        Duration hint = longest(chan.getPublisherInterval(), chan.getCacheLifetime());
+        if (hint == null) {
+            return interval;
+        }
+        if (hint.compareTo(MAX_HINT) > 0) {
+            hint = MAX_HINT;
+        }
+        return (hint.compareTo(interval) > 0) ? hint : interval;
+    }
+
+    /** Move the due time past the hours and days the publisher asked
+     * to skip.
+     */
+    public static Instant skipBlockedTime(Channel chan, Instant due)
+    {
+        Set<Integer> skipHours = chan.getSkipHours();
+        Set<DayOfWeek> skipDays = chan.getSkipDays();
+        if (skipHours.isEmpty() && skipDays.isEmpty()) {
+            return due;
+        }
+        ZonedDateTime t = due.atZone(ZoneOffset.UTC);
+        // a week worth of hours is enough to find a free slot, unless
+        // everything is blocked which we don't respect
+        for (int i = 0; i < 7 * 24; i++) {
+            if (!skipDays.contains(t.getDayOfWeek()) && !skipHours.contains(t.getHour())) {
+                return (i == 0) ? due : t.toInstant();
+            }
+            t = t.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+        }
+        return due;
+    }
+
+    /** Number of refreshes that the hints saved compared to refreshing
+     * with the user's interval.
+     */
+    public static int countSkipped(Channel chan, Instant regularDue, Instant hintedDue, Duration interval)
+    {
+        if (interval == null || interval.isZero() || !hintedDue.isAfter(regularDue)) {
+            return 0;
+        }
+        return (int) (Duration.between(regularDue, hintedDue).toMillis() / interval.toMillis());
+    }
+
+    private static Duration longest(Duration a, Duration b)
+    {
+        if (a == null) { return b; }
+        if (b == null) { return a; }
+        return (a.compareTo(b) >= 0) ? a : b;
+    }
+
+    /** Extract ttl, syndication module and skipHours/skipDays hints
+     * from the RSS or RDF channel element (or the Atom feed element)
+     * and store them in the channel.
+     */
+    public static void extract(Channel chan, Element channelElement)
+    {
+        List<String> hours = new ArrayList<>();
+        NodeList skipHoursElements = channelElement.getElementsByTagName("skipHours");
+        if (skipHoursElements.getLength() > 0) {
+            hours = texts(((Element) skipHoursElements.item(0)).getElementsByTagName("hour"));
+        }
+        List<String> days = new ArrayList<>();
+        NodeList skipDaysElements = channelElement.getElementsByTagName("skipDays");
+        if (skipDaysElements.getLength() > 0) {
+            days = texts(((Element) skipDaysElements.item(0)).getElementsByTagName("day"));
+        }
+        apply(chan,
+              firstText(channelElement.getElementsByTagName("ttl")),
+              firstText(channelElement.getElementsByTagNameNS(FeedParser.SYN_NS, "updatePeriod")),
+              firstText(channelElement.getElementsByTagNameNS(FeedParser.SYN_NS, "updateFrequency")),
+              hours, days);
+    }
+
+    private static String firstText(NodeList nodes)
+    {
+        return (nodes.getLength() > 0) ? nodes.item(0).getTextContent() : null;
+    }
+
+    private static List<String> texts(NodeList nodes)
+    {
+        List<String> texts = new ArrayList<>(nodes.getLength());
+        for (int i = 0; i < nodes.getLength(); i++) {
+            texts.add(nodes.item(i).getTextContent());
+        }
+        return texts;
+    }
+
+    /** Store the hints given as the raw text of the feed elements in
+     * the channel.
+     *
+     * @param ttl contents of the <tt>ttl</tt> element, or null
+     * @param updatePeriod contents of <tt>sy:updatePeriod</tt>, or null
+     * @param updateFrequency contents of <tt>sy:updateFrequency</tt>, or null
+     * @param hours contents of the <tt>skipHours/hour</tt> elements
+     * @param days contents of the <tt>skipDays/day</tt> elements
+     */
+    public static void apply(Channel chan, String ttl, String updatePeriod, String updateFrequency,
+                             List<String> hours, List<String> days)
+    {
+        Duration interval = null;
+
+        if (ttl != null) {
+            try {
+                long minutes = Long.parseLong(ttl.trim());
+                if (minutes > 0) {
+                    interval = Duration.ofMinutes(minutes);
+                }
+            } catch (NumberFormatException nfe) {
+                Novinar.getLogger().fine("invalid ttl in " + chan);
+            }
+        }
+
+        if (updatePeriod != null) {
+            long frequency = 1;
+            if (updateFrequency != null) {
+                try {
+                    frequency = Math.max(1, Long.parseLong(updateFrequency.trim()));
+                } catch (NumberFormatException nfe) {
+                    Novinar.getLogger().fine("invalid sy:updateFrequency in " + chan);
+                }
+            }
+            Duration period = syndicationPeriod(updatePeriod.trim());
+            if (period != null) {
+                interval = longest(interval, period.dividedBy(frequency));
+            }
+        }
+
+        Set<Integer> skipHours = new HashSet<>();
+        for (String hour : hours) {
+            try {
+                // some publishers use 1-24 instead of 0-23
+                skipHours.add(Integer.parseInt(hour.trim()) % 24);
+            } catch (NumberFormatException nfe) {
+                Novinar.getLogger().fine("invalid skipHours in " + chan);
+            }
+        }
+
+        Set<DayOfWeek> skipDays = EnumSet.noneOf(DayOfWeek.class);
+        for (String day : days) {
+            try {
+                skipDays.add(DayOfWeek.valueOf(day.trim().toUpperCase()));
+            } catch (IllegalArgumentException iae) {
+                Novinar.getLogger().fine("invalid skipDays in " + chan);
+            }
+        }
+
+        chan.setPublisherHints(interval, skipHours, skipDays);
+        if (interval != null || !skipHours.isEmpty() || !skipDays.isEmpty()) {
+            Novinar.getLogger().info("refresh hints for " + chan + ": interval=" + interval
+                                     + " skipHours=" + skipHours + " skipDays=" + skipDays);
+        }
+    }
+
+    private static Duration syndicationPeriod(String period)
+    {
+        switch (period) {
+        case "hourly": return Duration.ofHours(1);
+        case "daily": return Duration.ofDays(1);
+        case "weekly": return Duration.ofDays(7);
+        case "monthly": return Duration.ofDays(30);
+        case "yearly": return Duration.ofDays(365);
+        default: return null;
+        }
+    }
+
+    /** How long a response may be cached according to its
+     * Cache-Control and Expires headers.
+     *
+     * @return cache lifetime or <tt>null</tt> if the headers don't
+     * allow caching or are absent.
+     */
+    public static Duration cacheLifetime(String cacheControl, String expires, String date)
+    {
+        if (cacheControl != null) {
+            String maxAge = null;
+            for (String directive : cacheControl.toLowerCase().split(",")) {
+                String d = directive.trim();
+                // wherever they are in the list
+                if (d.equals("no-cache") || d.equals("no-store")) {
+                    return null;
+                }
+                if (d.startsWith("max-age=") && maxAge == null) {
+                    maxAge = d.substring(8).trim().replace("\"", "");
+                }
+            }
+            if (maxAge != null) {
+                try {
+                    long seconds = Long.parseLong(maxAge);
+                    return (seconds > 0) ? Duration.ofSeconds(seconds) : null;
+                } catch (NumberFormatException nfe) {
+                    return null;
+                }
+            }
+        }
+        if (expires != null) {
+            try {
+                Instant expiresAt = ZonedDateTime.parse(expires.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                Instant now = Instant.now();
+                if (date != null) {
+                    now = ZonedDateTime.parse(date.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                }
+                Duration lifetime = Duration.between(now, expiresAt);
+                return lifetime.isNegative() || lifetime.isZero() ? null : lifetime;
+            } catch (DateTimeParseException pe) {
+                // "Expires: 0" and other invalid dates mean "already expired"
+                return null;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,162 @@
+package org.bb.vityok.novinar.feed;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bb.vityok.novinar.core.Channel;
+
+/** Queue of channels ordered by the time they are due for a refresh.
+ *
+ * <p>The reader thread blocks in take until the earliest channel is
+ * due. Rescheduling a channel doesn't search the queue: the old entry
+ * is merely forgotten and skipped once it surfaces, so every
+ * operation costs O(log n).
+ */
+public class RefreshScheduler
+{
+    private static final AtomicLong sequence = new AtomicLong(0);
+
+    private final DelayQueue<Entry> queue = new DelayQueue<>();
+    /** Current (valid) queue entry for every scheduled channel. */
+    private final Map<Integer, Entry> entries = new HashMap<>();
+
+    private static class Entry implements Delayed
+    {
+        final Channel channel;
+        final Instant due;
+        // keeps entries with the same due time in FIFO order
+        final long seq = sequence.incrementAndGet();
+
+        Entry(Channel channel, Instant due) {
+            this.channel = channel;
+            this.due = due;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Duration.between(Instant.now(), due).toMillis(),
+                                TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            Entry o = (Entry) other;
+            int cmp = due.compareTo(o.due);
+            return (cmp != 0) ? cmp : Long.compare(seq, o.seq);
+        }
+    }
+
+    /** When the channel should be refreshed next time.
+     *
+     * <p>Publisher refresh hints may postpone the refresh, but never
+     * make it happen sooner than the user's update period allows.
+     *
+     * <p>Channels backing off after failures (or with an open circuit)
+     * are not due before their retry time.
+     *
+     * @return due time or <tt>null</tt> if the channel is never to be
+     * refreshed automatically.
+     */
+    public static Instant nextDueTime(Channel chan)
+    {
+        Duration interval = chan.getRefreshInterval();
+        if (interval == null) {
+            return null;
+        }
+        Instant due = chan.getLatestUpdate().plus(RefreshHints.effectiveInterval(chan, interval));
+        due = RefreshHints.skipBlockedTime(chan, due);
+        Instant retryAt = chan.getRetryAt();
+        if (retryAt != null && retryAt.isAfter(due)) {
+            return retryAt;
+        }
+        return due;
+    }
+
+    /** Put the channel in the queue at the given time, replacing its
+     * previous position if there was any.
+     */
+    public synchronized void schedule(Channel chan, Instant due)
+    {
+        Entry entry = new Entry(chan, due);
+        entries.put(chan.getChannelId(), entry);
+        queue.add(entry);
+    }
+
+    /** Re-key the channel according to its current properties: last
+     * update time and update period.
+     */
+    public void reschedule(Channel chan)
+    {
+        Instant due = nextDueTime(chan);
+        if (due == null) {
+            unschedule(chan);
+        } else {
+            schedule(chan, due);
+        }
+    }
+
+    /** Remove the channel from the queue. */
+    public synchronized void unschedule(Channel chan)
+    {
+        entries.remove(chan.getChannelId());
+    }
+
+    /** Replace all queue contents with the given channels.
+     *
+     * @param onBoot channels that are not ignored on boot become due
+     * immediately
+     */
+    public synchronized void scheduleAll(List<Channel> channels, boolean onBoot)
+    {
+        entries.clear();
+        queue.clear();
+        Instant now = Instant.now();
+        for (Channel chan : channels) {
+            Instant due = nextDueTime(chan);
+            if (due == null) {
+                continue;
+            }
+            if (onBoot && !chan.getIgnoreOnBoot()) {
+                due = now;
+            }
+            schedule(chan, due);
+        }
+    }
+
+    /** Wait for the next due channel and remove it from the queue.
+     *
+     * <p>The channel is not in the queue while it is being refreshed,
+     * it has to be rescheduled once the refresh is over.
+     */
+    public Channel take()
+        throws InterruptedException
+    {
+        while (true) {
+            Entry entry = queue.take();
+            synchronized (this) {
+                Integer id = entry.channel.getChannelId();
+                if (entries.get(id) == entry) {
+                    entries.remove(id);
+                    return entry.channel;
+                }
+                // stale entry of a rescheduled or removed channel
+            }
+        }
+    }
+
+    /** Number of channels waiting in the queue. */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+}
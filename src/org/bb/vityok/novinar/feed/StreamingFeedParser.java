@@ -0,0 +1,381 @@
+package org.bb.vityok.novinar.feed;
+
+import java.io.InputStream;
+
+import java.time.Instant;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.bb.vityok.novinar.core.Channel;
+import org.bb.vityok.novinar.core.NewsItem;
+import org.bb.vityok.novinar.core.Novinar;
+import org.bb.vityok.novinar.core.XMLParsers;
+
+/** Single pass parser for RSS, RDF and Atom feeds.
+ *
+ * <p>Instead of building the DOM tree and searching it for every item
+ * field, the feed is read with an XMLStreamReader from the beginning
+ * to the end exactly once. Only the fields of the current item are
+ * kept while it is parsed. Once its closing tag is read, the item
+ * goes to an ItemBatch. By default the batch is the whole feed and
+ * it is handed to Novinar when the feed is over. With the
+ * org.bb.vityok.novinar.ingest_batch property, chunks of that many
+ * items are handed over while the rest is still being parsed.
+ *
+ * <p>Items are extracted following the same rules as the DOM-based
+ * RSS, RDF and Atom parsers, which remain as the fallback for the
+ * feeds this parser fails to read.
+ */
+public class StreamingFeedParser
+{
+    private Novinar novinar;
+
+    public StreamingFeedParser(Novinar novinar)
+    {
+        this.novinar = novinar;
+    }
+
+    /** Fields of a single item or of the channel itself as they are
+     * read from the feed. Only the first occurrence of every field is
+     * kept, like the DOM-based parsers do.
+     */
+    private static class Fields
+    {
+        String title;
+        String link;
+        String origLink;
+        String guid;
+        String description;
+        String encoded;
+        String timestamp;
+        String author;
+        String creator;
+        String hrefAlternate;
+        String hrefSelf;
+        String hrefAny;
+
+        /** Atom "alternate" link, or "self", or any link. */
+        String atomLink()
+        {
+            if (hrefAlternate != null) { return hrefAlternate; }
+            if (hrefSelf != null) { return hrefSelf; }
+            return hrefAny;
+        }
+    }
+
+    /** Parse the feed and send all its items to Novinar.
+     *
+     * @see #processFeed(Channel, InputStream, String, ItemWatermark)
+     */
+    public FeedFormat processFeed(Channel chan, InputStream is, String encoding)
+        throws Exception
+    {
+        return processFeed(chan, is, encoding, new ItemWatermark(chan, false));
+    }
+
+    /** Parse the feed and send the items that are not known yet to
+     * Novinar.
+     *
+     * @param encoding character set of the feed, or <tt>null</tt> to
+     * let the parser detect it
+     * @param watermark tells which items were stored by the previous
+     * refresh
+     * @return format of the processed feed
+     * @throws FeedHandlingException when the document is not a feed
+     * in one of the known formats
+     */
+    public FeedFormat processFeed(Channel chan, InputStream is, String encoding,
+                                  ItemWatermark watermark)
+        throws Exception
+    {
+        XMLStreamReader reader = XMLParsers.createXMLStreamReader(is, encoding);
+        try {
+            while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+                // skip the prolog
+            }
+            if (!reader.isStartElement()) {
+                throw new FeedHandlingException("empty feed document");
+            }
+            FeedFormat format = FeedFormat.of(reader.getNamespaceURI(), reader.getLocalName());
+            if (format == null) {
+                throw new FeedHandlingException("unknown feed format, root element: "
+                                                + reader.getName());
+            }
+            Novinar.getLogger().info("Processing feed with streaming " + format + " parser");
+            processItems(chan, reader, format, watermark);
+            return format;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private int processItems(Channel chan, XMLStreamReader reader, FeedFormat format,
+                             ItemWatermark watermark)
+        throws Exception
+    {
+        // RSS and Atom elements share the namespace of the root
+        // element, RDF channel and items are in the RSS 1.0 namespace
+        String coreNs = (format == FeedFormat.RDF)
+            ? FeedParser.RSS_RDF_NS
+            : nonNull(reader.getNamespaceURI());
+        String itemName = (format == FeedFormat.ATOM) ? "entry" : "item";
+
+        Fields channelFields = new Fields();
+        String ttl = null;
+        String updatePeriod = null;
+        String updateFrequency = null;
+        List<String> skipHours = new ArrayList<>();
+        List<String> skipDays = new ArrayList<>();
+        boolean inSkipHours = false;
+        boolean inSkipDays = false;
+
+        Fields item = null;
+        Instant oldestTimestamp = null;
+        ItemBatch batch = new ItemBatch(novinar, chan);
+        int count = 0;
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                String name = reader.getLocalName();
+                if (item != null && name.equals(itemName) && coreNs.equals(nonNull(reader.getNamespaceURI()))) {
+                    NewsItem newsItem = toNewsItem(chan, format, item);
+                    if (!watermark.isKnown(newsItem)) {
+                        batch.add(newsItem);
+                    }
+                    count++;
+                    Instant iTs = newsItem.getDateCalendar();
+                    if (oldestTimestamp == null || iTs.isBefore(oldestTimestamp)) {
+                        oldestTimestamp = iTs;
+                    }
+                    item = null;
+                } else if (name.equals("skipHours")) {
+                    inSkipHours = false;
+                } else if (name.equals("skipDays")) {
+                    inSkipDays = false;
+                }
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+
+            String ns = nonNull(reader.getNamespaceURI());
+            String name = reader.getLocalName();
+            if (item != null) {
+                readField(reader, format, coreNs, ns, name, item);
+            } else if (name.equals(itemName) && coreNs.equals(ns)) {
+                item = new Fields();
+                if (format == FeedFormat.RDF) {
+                    item.guid = FeedParser.normalizeGuid(reader.getAttributeValue(FeedParser.RDF_NS, "about"));
+                }
+            } else if (FeedParser.SYN_NS.equals(ns)) {
+                if (name.equals("updatePeriod") && updatePeriod == null) {
+                    updatePeriod = readText(reader);
+                } else if (name.equals("updateFrequency") && updateFrequency == null) {
+                    updateFrequency = readText(reader);
+                }
+            } else if (name.equals("ttl") && ttl == null) {
+                ttl = readText(reader);
+            } else if (name.equals("skipHours")) {
+                inSkipHours = true;
+            } else if (name.equals("skipDays")) {
+                inSkipDays = true;
+            } else if (inSkipHours && name.equals("hour")) {
+                skipHours.add(readText(reader));
+            } else if (inSkipDays && name.equals("day")) {
+                skipDays.add(readText(reader));
+            } else {
+                readField(reader, format, coreNs, ns, name, channelFields);
+            }
+        }
+
+        String cLink = (format == FeedFormat.ATOM) ? channelFields.atomLink() : channelFields.link;
+        Novinar.getLogger().info("channel title: " + channelFields.title);
+        Novinar.getLogger().info("channel link: " + cLink);
+        Novinar.getLogger().info("channel description: " + channelFields.description);
+        RefreshHints.apply(chan, ttl, updatePeriod, updateFrequency, skipHours, skipDays);
+        Novinar.getLogger().info("got " + count + " items in the feed");
+
+        batch.flush();
+        novinar.cleanupChannel(chan, oldestTimestamp);
+        return count;
+    }
+
+    /** Store contents of the current element if it is one of the
+     * fields the news items are made of.
+     */
+    private static void readField(XMLStreamReader reader, FeedFormat format, String coreNs,
+                                  String ns, String name, Fields fields)
+        throws XMLStreamException
+    {
+        if (FeedParser.DC_NS.equals(ns)) {
+            if (name.equals("creator") && fields.creator == null) {
+                fields.creator = readText(reader);
+            } else if (name.equals("date") && fields.timestamp == null && format == FeedFormat.RDF) {
+                fields.timestamp = readText(reader);
+            }
+            return;
+        }
+        if (FeedParser.CONTENT_NS.equals(ns)) {
+            if (name.equals("encoded") && fields.encoded == null) {
+                fields.encoded = readText(reader);
+            }
+            return;
+        }
+        if (FeedParser.FEEDBURNER_NS.equals(ns)) {
+            if (name.equals("origLink") && fields.origLink == null) {
+                fields.origLink = readText(reader);
+            }
+            return;
+        }
+        if (!coreNs.equals(ns)) {
+            return;
+        }
+
+        switch (name) {
+        case "title":
+            if (fields.title == null) { fields.title = readText(reader); }
+            break;
+        case "guid":
+            if (format == FeedFormat.RSS && fields.guid == null) {
+                fields.guid = FeedParser.normalizeGuid(readText(reader));
+            }
+            break;
+        case "id":
+            if (format == FeedFormat.ATOM && fields.guid == null) {
+                fields.guid = FeedParser.normalizeGuid(readText(reader));
+            }
+            break;
+        case "author":
+            if (fields.author == null) { fields.author = readText(reader); }
+            break;
+        case "creator":
+            if (fields.creator == null) { fields.creator = readText(reader); }
+            break;
+        case "link":
+            if (format == FeedFormat.ATOM) {
+                String rel = reader.getAttributeValue(null, "rel");
+                String href = reader.getAttributeValue(null, "href");
+                if ("alternate".equals(rel)) {
+                    fields.hrefAlternate = href;
+                } else if ("self".equals(rel)) {
+                    fields.hrefSelf = href;
+                }
+                if (href != null) {
+                    fields.hrefAny = href;
+                }
+            } else if (fields.link == null) {
+                fields.link = readText(reader);
+            }
+            break;
+        case "description":
+            if (fields.description == null) { fields.description = readText(reader); }
+            break;
+        case "pubDate":
+            if (format == FeedFormat.RSS && fields.timestamp == null) { fields.timestamp = readText(reader); }
+            break;
+        case "published":
+            if (format == FeedFormat.ATOM && fields.timestamp == null) { fields.timestamp = readText(reader); }
+            break;
+        case "content":
+            // Atom entry contents are kept where RSS keeps content:encoded
+            if (format == FeedFormat.ATOM && fields.encoded == null) { fields.encoded = readText(reader); }
+            break;
+        case "summary":
+        case "subtitle":
+            if (format == FeedFormat.ATOM && fields.description == null) { fields.description = readText(reader); }
+            break;
+        }
+    }
+
+    private static NewsItem toNewsItem(Channel chan, FeedFormat format, Fields item)
+    {
+        String iLink;
+        String iDescription;
+        if (format == FeedFormat.ATOM) {
+            iLink = item.atomLink();
+            iDescription = (item.encoded != null) ? item.encoded
+                : (item.description != null) ? item.description
+                : "n/a";
+        } else {
+            iLink = (item.origLink != null) ? item.origLink : item.link;
+            if (item.description != null) {
+                iDescription = item.description;
+            } else if (item.encoded != null) {
+                iDescription = item.encoded;
+            } else {
+                iDescription = "";
+                Novinar.getLogger().severe("failed to extract description: " + item.title);
+            }
+        }
+
+        // some feeds have entries without titles. For example LJ/RSS
+        String iTitle = item.title;
+        if (iTitle == null) {
+            // take beginning of the description instead
+            iTitle = iDescription.substring(0, Math.min(36, iDescription.length()));
+            if (iDescription.length() > 36) {
+                iTitle += "...";
+            }
+        }
+
+        Instant iTs = null;
+        if (item.timestamp != null) {
+            iTs = FeedParser.parseTimestamp(chan, item.timestamp);
+            if (iTs == null) {
+                Novinar.getLogger().severe("failed to parse timestamp: " + item.timestamp);
+            }
+        } else {
+            Novinar.getLogger().severe("failed to extract timestamp: " + iLink);
+        }
+
+        NewsItem newsItem = new NewsItem();
+        newsItem.setTitle(iTitle);
+        newsItem.setLink(iLink);
+        newsItem.setGuid(item.guid);
+        newsItem.setDescription(iDescription);
+        newsItem.setDateCalendar((iTs != null) ? iTs : Instant.now());
+        newsItem.setCreator((item.author != null) ? item.author : item.creator);
+        return newsItem;
+    }
+
+    /** Text contents of the current element including all of its
+     * descendants, the same as Node.getTextContent returns. Leaves
+     * the reader at the closing tag of the element.
+     */
+    private static String readText(XMLStreamReader reader)
+        throws XMLStreamException
+    {
+        StringBuilder sb = new StringBuilder();
+        int depth = 1;
+        while (depth > 0) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                depth++;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                depth--;
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                sb.append(reader.getText());
+                break;
+            default:
+                break;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String nonNull(String ns)
+    {
+        return (ns == null) ? "" : ns;
+    }
+}
@@ -0,0 +1,323 @@
+package org.bb.vityok.novinar.feed;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
+import java.time.ZoneOffset;
+
+/** Hand-written scanners for the RFC-822 and ISO-8601 timestamps.
+ *
+ * <p>Almost all feeds use one of these two formats. Unlike the
+ * DateTimeFormatter patterns the scanners report a failure by
+ * returning <tt>null</tt> and never throw, so trying a scanner that
+ * doesn't match is cheap.
+ *
+ * <p>Both scanners are lenient in the same way as the patterns in
+ * FeedParser.TIMESTAMP_FORMATS: single-digit hours, missing seconds
+ * and a missing time-zone (UTC is assumed) are accepted.
+ */
+public class TimestampScanner
+{
+    private static final String[] MONTHS = {
+        "jan", "feb", "mar", "apr", "may", "jun",
+        "jul", "aug", "sep", "oct", "nov", "dec"
+    };
+
+    private final String s;
+    private int pos = 0;
+
+    private TimestampScanner(String s)
+    {
+        this.s = s;
+    }
+
+    /** Parse RFC-822 (RFC-2822) timestamp, like: "Fri, 25 May 2018
+     * 10:20:32 PDT" or "Tue, 28 Nov 2017 03:00 +0200".
+     *
+     * @return parsed timestamp or <tt>null</tt> if the string is not
+     * an RFC-822 timestamp
+     */
+    public static Instant scanRfc822(String timestamp)
+    {
+        TimestampScanner sc = new TimestampScanner(timestamp);
+        sc.skipSpaces();
+        // optional day of week
+        if (sc.pos < sc.s.length() && Character.isLetter(sc.s.charAt(sc.pos))) {
+            sc.skipLetters();
+            if (!sc.accept(',')) {
+                return null;
+            }
+            sc.skipSpaces();
+        }
+        int day = sc.number(1, 2);
+        if (day < 0 || !sc.skipSpaces()) {
+            return null;
+        }
+        int month = sc.month();
+        if (month < 0 || !sc.skipSpaces()) {
+            return null;
+        }
+        int start = sc.pos;
+        int year = sc.number(2, 4);
+        if (year < 0) {
+            return null;
+        }
+        if (sc.pos - start == 2) {
+            year += (year < 50) ? 2000 : 1900;
+        } else if (sc.pos - start == 3) {
+            return null;
+        }
+        if (!sc.skipSpaces()) {
+            return null;
+        }
+        int hour = sc.number(1, 2);
+        if (hour < 0 || !sc.accept(':')) {
+            return null;
+        }
+        int minute = sc.number(1, 2);
+        if (minute < 0) {
+            return null;
+        }
+        int second = 0;
+        if (sc.accept(':')) {
+            second = sc.number(1, 2);
+            if (second < 0) {
+                return null;
+            }
+        }
+        int offset = 0;
+        if (sc.skipSpaces()) {
+            offset = sc.zone();
+            if (offset == Integer.MIN_VALUE) {
+                return null;
+            }
+            sc.skipSpaces();
+        }
+        if (sc.pos != sc.s.length()) {
+            return null;
+        }
+        return toInstant(year, month, day, hour, minute, second, 0, offset);
+    }
+
+    /** Parse ISO-8601 timestamp, like: "2018-04-30T12:00:00+00:00",
+     * "2018-04-24T16:07:16.123Z" or "2018-07-02 10:52:00".
+     *
+     * @return parsed timestamp or <tt>null</tt> if the string is not
+     * an ISO-8601 timestamp
+     */
+    public static Instant scanIso8601(String timestamp)
+    {
+        TimestampScanner sc = new TimestampScanner(timestamp);
+        sc.skipSpaces();
+        int start = sc.pos;
+        int year = sc.number(4, 4);
+        if (year < 0 || !sc.accept('-')) {
+            return null;
+        }
+        int month = sc.number(2, 2);
+        if (month < 0 || !sc.accept('-')) {
+            return null;
+        }
+        int day = sc.number(2, 2);
+        if (day < 0 || sc.pos - start != 10) {
+            return null;
+        }
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        int nanos = 0;
+        int offset = 0;
+        if (sc.accept('T') || sc.accept('t') || sc.accept(' ')) {
+            hour = sc.number(2, 2);
+            if (hour < 0 || !sc.accept(':')) {
+                return null;
+            }
+            minute = sc.number(2, 2);
+            if (minute < 0) {
+                return null;
+            }
+            if (sc.accept(':')) {
+                second = sc.number(2, 2);
+                if (second < 0) {
+                    return null;
+                }
+                if (sc.accept('.') || sc.accept(',')) {
+                    int digits = 0;
+                    while (sc.pos < sc.s.length() && isDigit(sc.s.charAt(sc.pos))) {
+                        if (digits < 9) {
+                            nanos = nanos * 10 + (sc.s.charAt(sc.pos) - '0');
+                            digits++;
+                        }
+                        sc.pos++;
+                    }
+                    if (digits == 0) {
+                        return null;
+                    }
+                    for (; digits < 9; digits++) {
+                        nanos *= 10;
+                    }
+                }
+            }
+            if (sc.pos < sc.s.length() && !Character.isWhitespace(sc.s.charAt(sc.pos))) {
+                offset = sc.numericZone();
+                if (offset == Integer.MIN_VALUE) {
+                    return null;
+                }
+            }
+        }
+        sc.skipSpaces();
+        if (sc.pos != sc.s.length()) {
+            return null;
+        }
+        return toInstant(year, month, day, hour, minute, second, nanos, offset);
+    }
+
+    private static Instant toInstant(int year, int month, int day,
+                                     int hour, int minute, int second, int nanos,
+                                     int offsetSeconds)
+    {
+        if (month < 1 || month > 12
+            || day < 1 || day > Month.of(month).length(Year.isLeap(year))
+            || hour > 23 || minute > 59 || second > 60
+            || Math.abs(offsetSeconds) > 18 * 3600) {
+            return null;
+        }
+        // leap seconds are not representable, neither are they
+        // important for the news items
+        second = Math.min(second, 59);
+        return LocalDateTime.of(year, month, day, hour, minute, second, nanos)
+            .toInstant(ZoneOffset.ofTotalSeconds(offsetSeconds));
+    }
+
+    private static boolean isDigit(char c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    /** Read a number of minDigits to maxDigits digits.
+     *
+     * @return the number or -1 if there are not enough digits
+     */
+    private int number(int minDigits, int maxDigits)
+    {
+        int value = 0;
+        int digits = 0;
+        while (digits < maxDigits && pos < s.length() && isDigit(s.charAt(pos))) {
+            value = value * 10 + (s.charAt(pos) - '0');
+            pos++;
+            digits++;
+        }
+        return (digits >= minDigits) ? value : -1;
+    }
+
+    private boolean accept(char c)
+    {
+        if (pos < s.length() && s.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /** @return true if at least one space was skipped */
+    private boolean skipSpaces()
+    {
+        int start = pos;
+        while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+            pos++;
+        }
+        return pos > start;
+    }
+
+    private void skipLetters()
+    {
+        while (pos < s.length() && Character.isLetter(s.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    /** Read English month name, abbreviated or not.
+     *
+     * @return month number 1-12 or -1
+     */
+    private int month()
+    {
+        int start = pos;
+        skipLetters();
+        if (pos - start < 3) {
+            return -1;
+        }
+        for (int i = 0; i < MONTHS.length; i++) {
+            if (s.regionMatches(true, start, MONTHS[i], 0, 3)) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Read RFC-822 zone: numeric offset or one of the common
+     * abbreviations.
+     *
+     * @return offset in seconds or Integer.MIN_VALUE if the zone is
+     * not known
+     */
+    private int zone()
+    {
+        if (pos < s.length() && (s.charAt(pos) == '+' || s.charAt(pos) == '-')) {
+            return numericZone();
+        }
+        int start = pos;
+        skipLetters();
+        int hours;
+        switch (s.substring(start, pos).toUpperCase()) {
+        case "GMT": case "UT": case "UTC": case "Z": hours = 0; break;
+        case "EST": hours = -5; break;
+        case "EDT": hours = -4; break;
+        case "CST": hours = -6; break;
+        case "CDT": hours = -5; break;
+        case "MST": hours = -7; break;
+        case "MDT": hours = -6; break;
+        case "PST": hours = -8; break;
+        case "PDT": hours = -7; break;
+        case "WET": hours = 0; break;
+        case "WEST": case "BST": case "CET": hours = 1; break;
+        case "CEST": case "EET": hours = 2; break;
+        case "EEST": case "MSK": hours = 3; break;
+        default: return Integer.MIN_VALUE;
+        }
+        return hours * 3600;
+    }
+
+    /** Read "Z", "+hh", "+hhmm" or "+hh:mm" zone offset.
+     *
+     * @return offset in seconds or Integer.MIN_VALUE
+     */
+    private int numericZone()
+    {
+        if (accept('Z') || accept('z')) {
+            return 0;
+        }
+        int sign;
+        if (accept('+')) {
+            sign = 1;
+        } else if (accept('-')) {
+            sign = -1;
+        } else {
+            return Integer.MIN_VALUE;
+        }
+        int hours = number(2, 2);
+        if (hours < 0 || hours > 18) {
+            return Integer.MIN_VALUE;
+        }
+        int minutes = 0;
+        accept(':');
+        if (pos < s.length() && isDigit(s.charAt(pos))) {
+            minutes = number(2, 2);
+            if (minutes < 0 || minutes > 59) {
+                return Integer.MIN_VALUE;
+            }
+        }
+        return sign * (hours * 3600 + minutes * 60);
+    }
+}
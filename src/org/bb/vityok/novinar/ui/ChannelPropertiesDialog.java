@@ -21,6 +21,10 @@ class ChannelPropertiesDialog extends Alert
     final ComboBox<UpdatePeriod> cbxUpdatePeriod = new ComboBox<>();
     final Label lblProblems = new Label("Problems: ");
     final Label txtProblems = new Label("");
+    final Label lblBackoff = new Label("Backoff: ");
+    final Label txtBackoff = new Label("");
+    final Label lblKnownKeys = new Label("Known items: ");
+    final Label txtKnownKeys = new Label("");
 
     public ChannelPropertiesDialog(String title) {
         super(Alert.AlertType.INFORMATION);
@@ -55,6 +59,12 @@ class ChannelPropertiesDialog extends Alert
         grid.add(lblProblems, 0, 4);
         grid.add(txtProblems, 1, 4);
 
+        grid.add(lblBackoff, 0, 5);
+        grid.add(txtBackoff, 1, 5);
+
+        grid.add(lblKnownKeys, 0, 6);
+        grid.add(txtKnownKeys, 1, 6);
+
         getDialogPane().setContent(grid);
 
         init();
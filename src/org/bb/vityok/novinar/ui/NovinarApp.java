@@ -1,5 +1,6 @@
 package org.bb.vityok.novinar.ui;
 
+import java.util.List;
 import java.util.Optional;
 
 import java.util.logging.Level;
@@ -72,6 +73,12 @@ public class NovinarApp extends Application
 
     /** Table view with the current selection of news items. */
     TableView<NewsItem> itemsTable = null;
+    // outline whose items are shown in the table, they are loaded a
+    // page at a time while the user scrolls down
+    private Outline shownOutline = null;
+    private boolean moreItems = false;
+    private int shownItemsCount = 0;
+    private Label itemsCount = null;
     private TreeView<Outline> channelsTree = null;
     private WebView itemView = null;
     private Label itemTitle = null;
@@ -161,6 +168,15 @@ public class NovinarApp extends Application
         }
     }
 
+    public void feedsTreeCtxResync() {
+        Outline ol = channelsTree.getSelectionModel().getSelectedItem().getValue();
+        try {
+            novinar.resyncFeeds(ol);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "failed to resync feed", e);
+        }
+    }
+
     /** Builds the channels tree in the left side of the window.
      *
      * Uses Outline class as a data model.
@@ -198,6 +214,9 @@ public class NovinarApp extends Application
         MenuItem ctxRefresh = new MenuItem("Refresh");
         ctxRefresh.setOnAction(ae -> feedsTreeCtxRefresh());
 
+        MenuItem ctxResync = new MenuItem("Full resync");
+        ctxResync.setOnAction(ae -> feedsTreeCtxResync());
+
         MenuItem ctxNewFolder = new MenuItem("New folder...");
         ctxNewFolder.setOnAction(ae -> feedsTreeCtxProperties());
 
@@ -212,6 +231,7 @@ public class NovinarApp extends Application
 
         ContextMenu channelsContextMenu = new ContextMenu();
         channelsContextMenu.getItems().addAll(ctxRefresh,
+                                              ctxResync,
                                               new SeparatorMenuItem(),
                                               ctxNewFolder,
                                               ctxNewChannel,
@@ -295,6 +315,12 @@ public class NovinarApp extends Application
                             newItem.isReadProperty().addListener(readListener);
                             row.pseudoClassStateChanged(clsRead, newItem.getIsRead());
                             row.pseudoClassStateChanged(clsUnread, !newItem.getIsRead());
+                            // the last loaded item is shown, load the
+                            // next page
+                            ObservableList<NewsItem> items = itemsTable.getItems();
+                            if (moreItems && newItem == items.get(items.size() - 1)) {
+                                Platform.runLater(() -> loadNextItemsPage(newItem));
+                            }
                         } else {
                             row.pseudoClassStateChanged(clsRead, false);
                             row.pseudoClassStateChanged(clsUnread, false);
@@ -390,7 +416,9 @@ public class NovinarApp extends Application
 		}
 	    });
 
-        ToolBar tbItems = new ToolBar(btnNext, btnPrev, btnShare, btnRemove);
+        itemsCount = new Label("");
+
+        ToolBar tbItems = new ToolBar(btnNext, btnPrev, btnShare, btnRemove, itemsCount);
 
         final VBox vbox = new VBox();
         vbox.setPadding(new Insets(0, 3, 0, 3));
@@ -411,6 +439,7 @@ public class NovinarApp extends Application
                         Outline ol = novinar.appendChannel(parent.getValue(), fldUrl.getText(), fldTitle.getText());
                         ol.setIgnoreOnBoot(cbIgnoreOnBoot.isSelected());
                         ol.setUpdatePeriod(cbxUpdatePeriod.getValue());
+                        novinar.rescheduleChannel(ol.getChannel());
                         parent.rebuildChildren();
                         try {
                             novinar.loadFeeds(ol);
@@ -445,6 +474,19 @@ public class NovinarApp extends Application
                         } else {
                         	txtProblems.setText("No problems detected so far");
                         }
+                        if (chan.getFailureCount() > 0) {
+                            txtBackoff.setText((chan.isCircuitOpen() ? "circuit open, " : "")
+                                               + chan.getFailureCount() + " failure(s) in a row,"
+                                               + " next attempt at " + chan.getRetryAt());
+                        } else {
+                            txtBackoff.setText("None");
+                        }
+                        if (novinar.getKnownKeyCount(chan) > 0) {
+                            txtKnownKeys.setText(novinar.getKnownKeyCount(chan) + " keys in "
+                                                 + novinar.getKnownKeyBytes(chan) + " bytes");
+                        } else {
+                            txtKnownKeys.setText("Not loaded yet");
+                        }
                     }
                 }
 
@@ -456,6 +498,7 @@ public class NovinarApp extends Application
 
                         ol.setIgnoreOnBoot(cbIgnoreOnBoot.isSelected());
                         ol.setProperty(Outline.P_UPDATE_PERIOD, cbxUpdatePeriod.getValue().getCode());
+                        novinar.rescheduleChannel(chan);
 
                         try {
                             novinar.loadFeeds(ol);
@@ -548,6 +591,13 @@ public class NovinarApp extends Application
         grid.add(new Label("DB schema version:"), 0, 4);
         grid.add(new Label(Integer.toString(novinar.getDbSchemaVersion())), 1, 4);
 
+        grid.add(new Label("Cached statements reused/prepared:"), 0, 5);
+        grid.add(new Label(novinar.getStatementCacheHits() + " / "
+                           + novinar.getStatementCacheMisses()), 1, 5);
+
+        grid.add(new Label("Known item keys, bytes:"), 0, 6);
+        grid.add(new Label(Long.toString(novinar.getKnownKeyBytes())), 1, 6);
+
         dialog.getDialogPane().setContent(grid);
 
         dialog.show();
@@ -578,13 +628,17 @@ public class NovinarApp extends Application
      */
     private void updateItemsTable(Outline ol) {
         try {
-	    ObservableList<NewsItem> items;
-	    if (ol instanceof TrashBinOutline) {
-		items = FXCollections.observableArrayList(novinar.getNewsItemsInTrash());
-	    } else {
-		items = FXCollections.observableArrayList(novinar.getNewsItemsFor(ol));
-	    }
+            shownOutline = ol;
+            List<NewsItem> page = loadItemsPage(null);
+	    ObservableList<NewsItem> items = FXCollections.observableArrayList(page);
 	    itemsTable.setItems(items);
+            // counted without loading the items
+            if (ol instanceof TrashBinOutline) {
+                shownItemsCount = novinar.countNewsItemsInTrash();
+            } else {
+                shownItemsCount = novinar.countNewsItemsFor(ol);
+            }
+            updateItemsCount();
 
             // track changes to the list of news items, namely, when a
             // user "removes" selected items
@@ -600,6 +654,8 @@ public class NovinarApp extends Application
                                         e.printStackTrace();
                                     }
                                 }
+                                shownItemsCount -= c.getRemovedSize();
+                                updateItemsCount();
                             }
                         }
                     }});
@@ -609,6 +665,41 @@ public class NovinarApp extends Application
     }
 
 
+    /** Loads the page of items of the shown outline that follows the
+     * given item, newest first. */
+    private List<NewsItem> loadItemsPage(NewsItem after)
+        throws Exception
+    {
+        List<NewsItem> page;
+        if (shownOutline instanceof TrashBinOutline) {
+            page = novinar.getNewsItemPageInTrash(after);
+        } else {
+            page = novinar.getNewsItemPageFor(shownOutline, after);
+        }
+        moreItems = page.size() >= novinar.getPageSize();
+        return page;
+    }
+
+    /** Appends the page of items following the given last item to the
+     * table, unless it was appended already. */
+    private void loadNextItemsPage(NewsItem last) {
+        ObservableList<NewsItem> items = itemsTable.getItems();
+        if (!moreItems || items.isEmpty() || items.get(items.size() - 1) != last) {
+            return;
+        }
+        try {
+            items.addAll(loadItemsPage(last));
+            updateItemsCount();
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "failed to load more news items", e);
+        }
+    }
+
+    private void updateItemsCount() {
+        itemsCount.setText(itemsTable.getItems().size() + " of " + shownItemsCount + " items");
+    }
+
+
     private Node buildCenterPane() {
         SplitPane centerPane = new SplitPane();
 
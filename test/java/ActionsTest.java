@@ -12,9 +12,9 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
-import org.bb.vityok.novinar.Channel;
-import org.bb.vityok.novinar.Novinar;
-import org.bb.vityok.novinar.NewsItem;
+import org.bb.vityok.novinar.core.Channel;
+import org.bb.vityok.novinar.core.Novinar;
+import org.bb.vityok.novinar.core.NewsItem;
 
 @DisplayName("Test user interaction with the Novinar core")
 class ActionsTest
@@ -0,0 +1,87 @@
+import java.time.Duration;
+import java.time.Instant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.bb.vityok.novinar.core.UpdatePeriod;
+
+import org.bb.vityok.novinar.feed.AdaptivePolling;
+
+// To run only this test:
+//
+// ./gradlew test --tests *AdaptivePollingTest
+
+@DisplayName("Test the adaptive refresh intervals")
+class AdaptivePollingTest
+{
+    public static final Instant NOW = Instant.parse("2018-05-25T12:00:00Z");
+
+    AdaptivePolling polling = new AdaptivePolling(AdaptivePolling.DEFAULT_MIN_INTERVAL,
+                                                  AdaptivePolling.DEFAULT_MAX_INTERVAL);
+
+    /** @return timestamps of items published every gap, the newest
+     * one at the given time */
+    static List<Instant> items(int count, Instant newest, Duration gap) {
+        List<Instant> dates = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            dates.add(newest.minus(gap.multipliedBy(i)));
+        }
+        return dates;
+    }
+
+    @Test
+    void halfTheGap() {
+        List<Instant> dates = items(AdaptivePolling.SAMPLE_SIZE, NOW, Duration.ofHours(4));
+        assertEquals(Duration.ofHours(2), polling.estimate(dates, null, NOW));
+        // smoothed with the previous interval
+        assertEquals(Duration.ofHours(3), polling.estimate(dates, Duration.ofHours(4), NOW));
+    }
+
+    @Test
+    void dormantChannel() {
+        // silent for ten hours, twice its usual gap
+        List<Instant> dates = items(10, NOW.minus(Duration.ofHours(10)), Duration.ofHours(5));
+        assertEquals(Duration.ofHours(5), polling.estimate(dates, null, NOW));
+    }
+
+    @Test
+    void clamping() {
+        List<Instant> busy = items(AdaptivePolling.SAMPLE_SIZE, NOW, Duration.ofMinutes(1));
+        assertEquals(AdaptivePolling.DEFAULT_MIN_INTERVAL, polling.estimate(busy, null, NOW));
+        List<Instant> quiet = items(5, NOW.minus(Duration.ofDays(30)), Duration.ofDays(30));
+        assertEquals(AdaptivePolling.DEFAULT_MAX_INTERVAL, polling.estimate(quiet, null, NOW));
+
+        // a maximum below the minimum is raised to it
+        AdaptivePolling fixed = new AdaptivePolling(Duration.ofHours(1), Duration.ofMinutes(10));
+        assertEquals(Duration.ofHours(1), fixed.estimate(busy, null, NOW));
+        assertEquals(Duration.ofHours(1), fixed.estimate(quiet, null, NOW));
+    }
+
+    @Test
+    void tooFewSamples() {
+        List<Instant> none = Collections.emptyList();
+        assertEquals(UpdatePeriod.DEFAULT_UPDATE_PERIOD.getDuration(), polling.estimate(none, null, NOW));
+        assertEquals(Duration.ofHours(5), polling.estimate(none, Duration.ofHours(5), NOW));
+        List<Instant> one = Arrays.asList(NOW.minus(Duration.ofMinutes(5)));
+        assertEquals(Duration.ofHours(5), polling.estimate(one, Duration.ofHours(5), NOW));
+        // the previous interval is still clamped
+        assertEquals(AdaptivePolling.DEFAULT_MAX_INTERVAL, polling.estimate(one, Duration.ofDays(10), NOW));
+    }
+
+    @Test
+    void identicalTimestamps() {
+        // all items of the feed carry the time of the last build
+        List<Instant> same = Collections.nCopies(AdaptivePolling.SAMPLE_SIZE, NOW);
+        assertEquals(AdaptivePolling.DEFAULT_MIN_INTERVAL, polling.estimate(same, null, NOW));
+        List<Instant> older = Collections.nCopies(AdaptivePolling.SAMPLE_SIZE, NOW.minus(Duration.ofHours(6)));
+        assertEquals(Duration.ofHours(3), polling.estimate(older, null, NOW));
+    }
+}
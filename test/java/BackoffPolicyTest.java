@@ -0,0 +1,149 @@
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bb.vityok.novinar.core.Channel;
+import org.bb.vityok.novinar.core.OPMLManager;
+import org.bb.vityok.novinar.core.UpdatePeriod;
+
+import org.bb.vityok.novinar.feed.BackoffPolicy;
+import org.bb.vityok.novinar.feed.FeedResponse;
+
+// To run only this test:
+//
+// ./gradlew test --tests *BackoffPolicyTest
+
+@DisplayName("Test the failure backoff and the Retry-After parsing")
+class BackoffPolicyTest
+{
+    public static final String OPML_FILE_NAME = "test/resources/opml-file.opml";
+
+    BackoffPolicy policy = new BackoffPolicy();
+    Channel chan;
+    Duration base;
+
+    @BeforeEach
+    void setup() {
+        chan = new OPMLManager(OPML_FILE_NAME).getChannels().get(0);
+        base = (chan.getRefreshInterval() != null)
+            ? chan.getRefreshInterval()
+            : UpdatePeriod.DEFAULT_UPDATE_PERIOD.getDuration();
+    }
+
+    /** Check that the retry time is the delay from now, give or take
+     * the jitter. */
+    void assertDelay(Duration delay, Instant before, Instant after) {
+        Instant retryAt = chan.getRetryAt();
+        long millis = delay.toMillis();
+        Instant earliest = before.plusMillis((long) (millis * (1 - BackoffPolicy.JITTER)));
+        Instant latest = after.plusMillis((long) (millis * (1 + BackoffPolicy.JITTER)));
+        assertFalse(retryAt.isBefore(earliest), retryAt + " before " + earliest);
+        assertFalse(retryAt.isAfter(latest), retryAt + " after " + latest);
+    }
+
+    @Test
+    void exponentialGrowth() {
+        Duration expected = base;
+        for (int failures = 1; failures < BackoffPolicy.FAILURES_TO_OPEN; failures++) {
+            Instant before = Instant.now();
+            policy.failed(chan, null);
+            Instant after = Instant.now();
+            assertEquals(failures, chan.getFailureCount());
+            assertFalse(chan.isCircuitOpen());
+            assertDelay(expected.compareTo(BackoffPolicy.MAX_BACKOFF) > 0
+                        ? BackoffPolicy.MAX_BACKOFF
+                        : expected,
+                        before, after);
+            expected = expected.multipliedBy(2);
+        }
+    }
+
+    @Test
+    void jitterBounds() {
+        // the jitter spreads the retries, but stays within its bounds
+        Instant first = null;
+        boolean spread = false;
+        for (int i = 0; i < 20; i++) {
+            chan.resetBackoff();
+            Instant before = Instant.now();
+            policy.failed(chan, null);
+            assertDelay(base, before, Instant.now());
+            if (first == null) {
+                first = chan.getRetryAt();
+            } else if (Duration.between(first, chan.getRetryAt()).abs().toMillis() > 1000) {
+                spread = true;
+            }
+        }
+        assertTrue(spread);
+    }
+
+    @Test
+    void circuitBreaker() {
+        for (int i = 0; i < BackoffPolicy.FAILURES_TO_OPEN - 1; i++) {
+            policy.failed(chan, null);
+        }
+        assertFalse(chan.isCircuitOpen());
+
+        Instant before = Instant.now();
+        policy.failed(chan, null);
+        assertTrue(chan.isCircuitOpen());
+        assertDelay(BackoffPolicy.OPEN_CIRCUIT_DELAY, before, Instant.now());
+
+        policy.succeeded(chan);
+        assertFalse(chan.isCircuitOpen());
+        assertEquals(0, chan.getFailureCount());
+        assertNull(chan.getRetryAt());
+
+        // counting starts over
+        before = Instant.now();
+        policy.failed(chan, null);
+        assertEquals(1, chan.getFailureCount());
+        assertDelay(base, before, Instant.now());
+    }
+
+    @Test
+    void retryAfterNotShortened() {
+        Duration retryAfter = base.multipliedBy(10);
+        Instant before = Instant.now();
+        policy.failed(chan, retryAfter);
+        Instant after = Instant.now();
+        assertFalse(chan.getRetryAt().isBefore(before.plus(retryAfter)));
+        assertFalse(chan.getRetryAt().isAfter(after.plus(retryAfter)));
+    }
+
+    @Test
+    void retryAfterSeconds() {
+        Instant now = Instant.parse("2018-05-25T10:00:00Z");
+        assertEquals(Duration.ofSeconds(120), FeedResponse.parseRetryAfter("120", now));
+        assertEquals(Duration.ofSeconds(120), FeedResponse.parseRetryAfter(" 120 ", now));
+        assertEquals(Duration.ZERO, FeedResponse.parseRetryAfter("-5", now));
+    }
+
+    @Test
+    void retryAfterDate() {
+        Instant now = Instant.parse("2018-05-25T10:00:00Z");
+        assertEquals(Duration.ofMinutes(90),
+                     FeedResponse.parseRetryAfter("Fri, 25 May 2018 11:30:00 GMT", now));
+        // dates in the past mean right away
+        assertEquals(Duration.ZERO,
+                     FeedResponse.parseRetryAfter("Fri, 25 May 2018 09:00:00 GMT", now));
+    }
+
+    @Test
+    void retryAfterGarbage() {
+        Instant now = Instant.now();
+        assertNull(FeedResponse.parseRetryAfter(null, now));
+        assertNull(FeedResponse.parseRetryAfter("", now));
+        assertNull(FeedResponse.parseRetryAfter("soon", now));
+        assertNull(FeedResponse.parseRetryAfter("2018-05-25T11:30:00Z", now));
+        assertNull(FeedResponse.parseRetryAfter("12.5", now));
+    }
+}
@@ -10,12 +10,15 @@ import java.nio.file.FileVisitResult;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 
+import java.time.Instant;
+
 import static java.nio.file.FileVisitResult.CONTINUE;
 import static java.nio.file.FileVisitResult.TERMINATE;
 
 import org.junit.jupiter.api.AfterEach;
 
-import org.bb.vityok.novinar.Novinar;
+import org.bb.vityok.novinar.core.Channel;
+import org.bb.vityok.novinar.core.Novinar;
 
 
 /** Common methods and variables for the Novinar tests. */
@@ -23,6 +26,8 @@ public class BaseTest
 {
     public static final String OPML_FILE_NAME = "test/resources/opml-file.opml";
     public static final String DB_NAME = "testDB";
+    /** How long to wait for the first refresh of the test feeds. */
+    public static final long FEEDS_TIMEOUT_MILLIS = 30000;
     Novinar novinar = null;
 
     /** Ensures a clean start for the test. */
@@ -31,21 +36,40 @@ public class BaseTest
         // system property derby.system.home points to, or the current
         // directory (user.dir) if derby.system.home is not set.
         try {
-            // remove the derby DB if it exists
+            // remove the derby DB and the feed cache next to it if
+            // they exist
             Path testDB = FileSystems.getDefault().getPath(DB_NAME);
             deleteFileOrFolder(testDB);
+            deleteFileOrFolder(FileSystems.getDefault().getPath(DB_NAME + "-cache"));
         } catch (IOException e) {
             e.printStackTrace();
         }
 
         try {
+            Instant started = Instant.now();
             novinar = new Novinar(OPML_FILE_NAME, DB_NAME);
             novinar.setup();
+            awaitFeeds(started);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /** Waits until the reader thread has refreshed every channel
+     * once, otherwise the tests race with it storing the items of
+     * the test feeds. */
+    void awaitFeeds(Instant started)
+        throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + FEEDS_TIMEOUT_MILLIS;
+        for (Channel chan : novinar.getChannels()) {
+            while (!chan.getLatestUpdate().isAfter(started)
+                   && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
     @AfterEach
     public void close () {
         try {
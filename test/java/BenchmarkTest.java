@@ -0,0 +1,127 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import org.bb.vityok.novinar.core.Channel;
+import org.bb.vityok.novinar.core.NewsItem;
+import org.bb.vityok.novinar.core.OPMLManager;
+
+import org.bb.vityok.novinar.feed.FeedParser;
+
+// The benchmarks are excluded from the regular test runs, to run
+// them:
+//
+// ./gradlew benchmark
+
+@Tag("benchmark")
+@DisplayName("Measure the feed parsers and the item storage")
+class BenchmarkTest
+    extends BaseTest
+{
+    public static final int TIMESTAMP_ROUNDS = 20000;
+    public static final int PARSER_ROUNDS = 50;
+
+    @BeforeEach
+    void setup() {
+        configure();
+    }
+
+    @Test
+    void timestampScanners() {
+        Channel chan = new OPMLManager(OPML_FILE_NAME).getChannels().get(0);
+        String[] stamps = {
+            "Fri, 25 May 2018 10:20:32 PDT",
+            "2018-04-30T12:00:00+00:00",
+            "05/30/2018 20:41 PM"
+        };
+        for (String ts : stamps) {
+            chan.setTimestampFormat(-1);
+            for (int i = 0; i < TIMESTAMP_ROUNDS; i++) {
+                TimestampScannerTest.parseWithPatterns(ts);
+                FeedParser.parseTimestamp(chan, ts);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < TIMESTAMP_ROUNDS; i++) {
+                TimestampScannerTest.parseWithPatterns(ts);
+            }
+            long patternsTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < TIMESTAMP_ROUNDS; i++) {
+                FeedParser.parseTimestamp(chan, ts);
+            }
+            long scannerTime = System.nanoTime() - start;
+            System.out.printf("%s: patterns %.0f ns, scanners with remembered format %.0f ns per call%n",
+                              ts, (double) patternsTime / TIMESTAMP_ROUNDS,
+                              (double) scannerTime / TIMESTAMP_ROUNDS);
+        }
+    }
+
+    @Test
+    void feedParsers()
+        throws Exception
+    {
+        StreamingFeedParserTest parsers = new StreamingFeedParserTest();
+        parsers.setup();
+        try {
+            for (String feed : StreamingFeedParserTest.FEEDS) {
+                byte[] body = StreamingFeedParserTest.read(feed);
+                // warm up both paths first
+                for (int i = 0; i < PARSER_ROUNDS; i++) {
+                    parsers.parseDom(body);
+                    parsers.parseStreaming(body);
+                }
+                long domStart = System.nanoTime();
+                for (int i = 0; i < PARSER_ROUNDS; i++) {
+                    parsers.parseDom(body);
+                }
+                long domTime = System.nanoTime() - domStart;
+                long streamStart = System.nanoTime();
+                for (int i = 0; i < PARSER_ROUNDS; i++) {
+                    parsers.parseStreaming(body);
+                }
+                long streamTime = System.nanoTime() - streamStart;
+                System.out.printf("%s (%d bytes): DOM %.2f ms, streaming %.2f ms per feed%n",
+                                  feed, body.length,
+                                  domTime / 1e6 / PARSER_ROUNDS, streamTime / 1e6 / PARSER_ROUNDS);
+            }
+        } finally {
+            parsers.close();
+        }
+    }
+
+    @Test
+    void itemStorage()
+        throws Exception
+    {
+        Channel chan = novinar.getChannels().get(0);
+        int size = NewsItemDAOTest.FEED_SIZE;
+
+        long start = System.nanoTime();
+        for (NewsItem item : NewsItemDAOTest.syntheticFeed("single", "insert")) {
+            novinar.insertOrUpdateItem(chan, item);
+        }
+        long singleInsert = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (NewsItem item : NewsItemDAOTest.syntheticFeed("single", "update")) {
+            novinar.insertOrUpdateItem(chan, item);
+        }
+        long singleUpdate = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        novinar.insertOrUpdateItems(chan, NewsItemDAOTest.syntheticFeed("batch", "insert"));
+        long batchInsert = System.nanoTime() - start;
+        start = System.nanoTime();
+        novinar.insertOrUpdateItems(chan, NewsItemDAOTest.syntheticFeed("batch", "update"));
+        long batchUpdate = System.nanoTime() - start;
+        start = System.nanoTime();
+        novinar.insertOrUpdateItems(chan, NewsItemDAOTest.syntheticFeed("batch", "update"));
+        long batchUnchanged = System.nanoTime() - start;
+
+        System.out.printf("%d items, item by item: insert %.0f items/s, update %.0f items/s%n",
+                          size, size / (singleInsert / 1e9), size / (singleUpdate / 1e9));
+        System.out.printf("%d items, batched: insert %.0f items/s, update %.0f items/s, unchanged %.0f items/s%n",
+                          size, size / (batchInsert / 1e9), size / (batchUpdate / 1e9),
+                          size / (batchUnchanged / 1e9));
+    }
+}
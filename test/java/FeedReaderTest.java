@@ -1,5 +1,9 @@
 import java.io.File;
 
+import java.net.URL;
+
+import java.time.Instant;
+
 import java.util.List;
 
 import org.junit.jupiter.api.BeforeAll;
@@ -10,12 +14,13 @@ import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 
-import org.bb.vityok.novinar.Channel;
-import org.bb.vityok.novinar.Novinar;
-import org.bb.vityok.novinar.NewsItem;
+import org.bb.vityok.novinar.core.Channel;
+import org.bb.vityok.novinar.core.Novinar;
+import org.bb.vityok.novinar.core.NewsItem;
 
 import org.bb.vityok.novinar.feed.RSS;
 
@@ -54,6 +59,39 @@ class FeedReaderTest
         }
     }
 
+    @Test
+    void wholeBodyRead()
+        throws Exception
+    {
+        // the body is parsed as it is read, the fingerprint and the
+        // counters must still cover all of it
+        for (Channel chan : novinar.getChannels()) {
+            assertNull(chan.getProblems(), chan.toString());
+            File feed = new File(new URL(chan.getLink()).getPath());
+            assertEquals(feed.length(), chan.getUncompressedBytes(), chan.toString());
+        }
+    }
+
+    @Test
+    void unchangedBodySkipped()
+        throws Exception
+    {
+        Channel chan = novinar.getChannels().get(0);
+        // without the watermark every item of the feed would go to
+        // the database again
+        chan.setWatermark(null, null);
+        long stored = chan.getInsertedItems() + chan.getUpdatedItems() + chan.getUnchangedItems();
+
+        Instant started = Instant.now();
+        novinar.loadFeed(chan);
+        long deadline = System.currentTimeMillis() + FEEDS_TIMEOUT_MILLIS;
+        while (!chan.getLatestUpdate().isAfter(started) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNull(chan.getProblems());
+        assertEquals(stored, chan.getInsertedItems() + chan.getUpdatedItems() + chan.getUnchangedItems());
+    }
+
     @Test
     void parseTimeStamps()
     {
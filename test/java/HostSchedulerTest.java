@@ -0,0 +1,106 @@
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bb.vityok.novinar.feed.HostScheduler;
+
+// To run only this test:
+//
+// ./gradlew test --tests *HostSchedulerTest
+
+@DisplayName("Test the per-host download scheduling")
+class HostSchedulerTest
+{
+    public static final int MAX_PER_HOST = 2;
+
+    // no delay between the requests, they start as soon as a slot is free
+    HostScheduler scheduler = new HostScheduler(MAX_PER_HOST, 0);
+    // release callbacks of the started requests
+    List<Runnable> started = new ArrayList<>();
+
+    @AfterEach
+    void close() {
+        scheduler.close();
+    }
+
+    /** Submit a request that completes right away but keeps its slot
+     * until it is released. */
+    CompletableFuture<Integer> submit(String host, int id) {
+        return scheduler.submit(host, release -> {
+                started.add(release);
+                return CompletableFuture.completedFuture(id);
+            });
+    }
+
+    @Test
+    void slotHeldUntilReleased()
+        throws Exception
+    {
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            results.add(submit("a.example", i));
+        }
+        // completed requests still occupy the host
+        assertEquals(MAX_PER_HOST, started.size());
+        assertEquals(0, results.get(0).get());
+        assertEquals(3, scheduler.getQueueDepth("a.example"));
+
+        started.get(0).run();
+        assertEquals(MAX_PER_HOST + 1, started.size());
+        assertEquals(2, results.get(2).get());
+        // releasing twice frees a single slot
+        started.get(0).run();
+        assertEquals(MAX_PER_HOST + 1, started.size());
+
+        started.get(1).run();
+        started.get(2).run();
+        assertEquals(5, started.size());
+        assertEquals(0, scheduler.getQueueDepth("a.example"));
+    }
+
+    @Test
+    void hostsIndependent()
+    {
+        for (int i = 0; i < 3; i++) {
+            submit("a.example", i);
+        }
+        assertEquals(MAX_PER_HOST, started.size());
+        submit("b.example", 10);
+        submit("b.example", 11);
+        assertEquals(2 * MAX_PER_HOST, started.size());
+        assertEquals(1, scheduler.getQueueDepth("a.example"));
+        assertEquals(0, scheduler.getQueueDepth("b.example"));
+    }
+
+    @Test
+    void failuresReleased()
+        throws Exception
+    {
+        CompletableFuture<Integer> failed = scheduler.submit("a.example", release ->
+                CompletableFuture.failedFuture(new IOException("connection refused")));
+        CompletableFuture<Integer> thrown = scheduler.submit("a.example", release -> {
+                throw new IllegalStateException("no request");
+            });
+        ExecutionException ee = assertThrows(ExecutionException.class, failed::get);
+        assertTrue(ee.getCause() instanceof IOException);
+        ee = assertThrows(ExecutionException.class, thrown::get);
+        assertTrue(ee.getCause() instanceof IllegalStateException);
+
+        // both slots are free again
+        submit("a.example", 1);
+        submit("a.example", 2);
+        assertEquals(MAX_PER_HOST, started.size());
+    }
+}
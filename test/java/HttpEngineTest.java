@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.net.InetSocketAddress;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bb.vityok.novinar.feed.FeedResponse;
+import org.bb.vityok.novinar.feed.HttpEngine;
+
+// To run only this test:
+//
+// ./gradlew test --tests *HttpEngineTest
+
+@DisplayName("Test the HTTP engine against a local server")
+class HttpEngineTest
+{
+    public static final String FEED = "<rss version=\"2.0\"><channel><title>t</title></channel></rss>";
+    public static final String ETAG = "\"v1\"";
+
+    HttpServer server;
+    String base;
+    AtomicInteger loops = new AtomicInteger();
+    CountDownLatch bodySent = new CountDownLatch(1);
+    ExecutorService handlers = Executors.newCachedThreadPool();
+    HttpEngine engine = new HttpEngine();
+
+    @BeforeEach
+    void setup()
+        throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+        // absolute location, then a relative one
+        server.createContext("/old", ex -> redirect(ex, 301, base + "/moved"));
+        server.createContext("/moved", ex -> redirect(ex, 302, "/feed"));
+        server.createContext("/loop", ex -> {
+                loops.incrementAndGet();
+                redirect(ex, 307, "/loop");
+            });
+        server.createContext("/feed", ex -> {
+                if (ETAG.equals(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+                    ex.sendResponseHeaders(304, -1);
+                    ex.close();
+                    return;
+                }
+                byte[] body = FEED.getBytes(StandardCharsets.UTF_8);
+                ex.getResponseHeaders().set("Content-Type", "application/rss+xml; charset=UTF-8");
+                ex.getResponseHeaders().set("ETag", ETAG);
+                ex.sendResponseHeaders(200, body.length);
+                try (OutputStream os = ex.getResponseBody()) {
+                    os.write(body);
+                }
+            });
+        // the headers come right away, the gzip body only later
+        server.createContext("/gzip", ex -> {
+                ex.getResponseHeaders().set("Content-Encoding", "gzip");
+                ex.sendResponseHeaders(200, 0);
+                try (OutputStream os = new GZIPOutputStream(ex.getResponseBody())) {
+                    bodySent.await();
+                    os.write(FEED.getBytes(StandardCharsets.UTF_8));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        server.setExecutor(handlers);
+        server.start();
+    }
+
+    @AfterEach
+    void close()
+    {
+        bodySent.countDown();
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    static void redirect(HttpExchange ex, int status, String location)
+        throws IOException
+    {
+        ex.getResponseHeaders().set("Location", location);
+        ex.sendResponseHeaders(status, -1);
+        ex.close();
+    }
+
+    @Test
+    void followRedirects()
+        throws Exception
+    {
+        FeedResponse response = engine.fetch(base + "/old", null, null).get();
+        assertEquals(200, response.getStatus());
+        assertEquals(ETAG, response.getETag());
+        assertEquals("UTF-8", response.getCharset());
+        assertEquals(FEED, new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8));
+
+        // the validators go along to the new location
+        FeedResponse notModified = engine.fetch(base + "/old", ETAG, null).get();
+        assertTrue(notModified.isNotModified());
+    }
+
+    @Test
+    void decodedByReader()
+        throws Exception
+    {
+        // the response is there before any of the body, so the gzip
+        // header has not been read by the HTTP client
+        FeedResponse response = engine.fetch(base + "/gzip", null, null).get(5, TimeUnit.SECONDS);
+        assertEquals(0, response.getUncompressedBytes());
+        bodySent.countDown();
+        assertEquals(FEED, new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8));
+        assertEquals(FEED.length(), response.getUncompressedBytes());
+    }
+
+    @Test
+    void redirectLoop()
+    {
+        ExecutionException ee = assertThrows(ExecutionException.class,
+                                             () -> engine.fetch(base + "/loop", null, null).get());
+        assertTrue(ee.getCause() instanceof IOException, ee.getCause().toString());
+        assertEquals(HttpEngine.MAX_REDIRECTS + 1, loops.get());
+    }
+}
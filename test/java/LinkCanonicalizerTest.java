@@ -0,0 +1,63 @@
+import java.util.Arrays;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.bb.vityok.novinar.core.LinkCanonicalizer;
+
+// To run only this test:
+//
+// ./gradlew test --tests *LinkCanonicalizerTest
+
+@DisplayName("Test the canonical links of news items")
+class LinkCanonicalizerTest
+{
+    LinkCanonicalizer canonicalizer = new LinkCanonicalizer(true, LinkCanonicalizer.DEFAULT_TRACKING_PARAMS);
+
+    @Test
+    void schemeHostAndPort() {
+        assertEquals("http://example.com/news/1",
+                     canonicalizer.canonicalize("HTTPS://Example.COM:443/news/1"));
+        assertEquals("http://example.com/news/1",
+                     canonicalizer.canonicalize(" http://example.com:80/news/1#comments "));
+        assertEquals("http://example.com:8080/",
+                     canonicalizer.canonicalize("http://example.com:8080"));
+        // the path is case sensitive
+        assertEquals("http://example.com/News/1",
+                     canonicalizer.canonicalize("http://example.com/News/1"));
+    }
+
+    @Test
+    void queryParameters() {
+        assertEquals("http://example.com/item?a=1&id=5",
+                     canonicalizer.canonicalize("https://example.com/item?id=5&utm_source=rss"
+                                                + "&UTM_MEDIUM=feed&a=1&fbclid=xyz"));
+        assertEquals("http://example.com/item",
+                     canonicalizer.canonicalize("http://example.com/item?utm_campaign=x"));
+        // repeated parameters keep their order
+        assertEquals("http://example.com/item?a=2&b=1&b=0",
+                     canonicalizer.canonicalize("http://example.com/item?b=1&a=2&b=0"));
+    }
+
+    @Test
+    void configuration() {
+        LinkCanonicalizer custom = new LinkCanonicalizer(true, Arrays.asList("ref", "src_*"));
+        assertEquals("http://example.com/item?utm_source=rss",
+                     custom.canonicalize("http://example.com/item?ref=feed&utm_source=rss&src_x=1"));
+
+        LinkCanonicalizer disabled = new LinkCanonicalizer(false, LinkCanonicalizer.DEFAULT_TRACKING_PARAMS);
+        assertEquals("HTTPS://Example.COM/item?utm_source=rss",
+                     disabled.canonicalize(" HTTPS://Example.COM/item?utm_source=rss"));
+    }
+
+    @Test
+    void otherLinks() {
+        assertNull(canonicalizer.canonicalize(null));
+        assertEquals("mailto:editor@example.com", canonicalizer.canonicalize("mailto:editor@example.com"));
+        assertEquals("/relative/link", canonicalizer.canonicalize("/relative/link"));
+        assertEquals("not a link", canonicalizer.canonicalize("not a link"));
+    }
+}
@@ -0,0 +1,324 @@
+import java.time.Instant;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bb.vityok.novinar.core.Channel;
+import org.bb.vityok.novinar.core.NewsItem;
+
+// To run only this test:
+//
+// ./gradlew test --tests *NewsItemDAOTest
+
+@DisplayName("Test storing news items in the database")
+class NewsItemDAOTest
+    extends BaseTest
+{
+    public static final int FEED_SIZE = 1000;
+
+    @BeforeEach
+    void setup() {
+        configure();
+    }
+
+    /** Synthetic feed with FEED_SIZE items. */
+    static List<NewsItem> syntheticFeed(String prefix, String title) {
+        List<NewsItem> items = new ArrayList<>();
+        Instant now = Instant.parse("2018-07-01T12:00:00Z");
+        for (int i = 0; i < FEED_SIZE; i++) {
+            NewsItem item = new NewsItem();
+            item.setTitle(title + " " + i);
+            item.setLink("http://example.com/" + prefix + "/" + i);
+            item.setDescription("<p>Description of the item number " + i + "</p>");
+            item.setCreator("author");
+            item.setDateCalendar(now.minusSeconds(i * 60));
+            items.add(item);
+        }
+        return items;
+    }
+
+    /** @return number of stored items of the channel with the given
+     * link prefix, over http or https, and title prefix */
+    int countItems(Channel chan, String prefix, String title)
+        throws Exception
+    {
+        int count = 0;
+        for (NewsItem item : novinar.getNewsItemsFor(chan)) {
+            if (item.getLink().replaceFirst("^https:", "http:")
+                .startsWith("http://example.com/" + prefix + "/")
+                && item.getTitle().startsWith(title)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    void bulkUpsert()
+        throws Exception
+    {
+        Channel chan = novinar.getChannels().get(0);
+        novinar.insertOrUpdateItems(chan, syntheticFeed("bulk", "first"));
+        assertEquals(FEED_SIZE, countItems(chan, "bulk", "first"));
+
+        // the same links update the existing items
+        novinar.insertOrUpdateItems(chan, syntheticFeed("bulk", "second"));
+        assertEquals(0, countItems(chan, "bulk", "first"));
+        assertEquals(FEED_SIZE, countItems(chan, "bulk", "second"));
+
+        // trashed items are not brought back
+        NewsItem trashed = null;
+        for (NewsItem item : novinar.getNewsItemsFor(chan)) {
+            if (item.getLink().startsWith("http://example.com/bulk/")) {
+                trashed = item;
+                break;
+            }
+        }
+        novinar.removeNewsItem(trashed);
+        novinar.insertOrUpdateItems(chan, syntheticFeed("bulk", "third"));
+        assertEquals(FEED_SIZE - 1, countItems(chan, "bulk", "third"));
+    }
+
+    @Test
+    void unchangedItemsSkipped()
+        throws Exception
+    {
+        Channel chan = novinar.getChannels().get(0);
+        novinar.insertOrUpdateItems(chan, syntheticFeed("hash", "same"));
+
+        long updated = chan.getUpdatedItems();
+        long unchanged = chan.getUnchangedItems();
+        novinar.insertOrUpdateItems(chan, syntheticFeed("hash", "same"));
+        // the feed reader thread might be storing other feeds of the
+        // channel at the same time
+        assertTrue(chan.getUnchangedItems() - unchanged >= FEED_SIZE);
+
+        List<NewsItem> feed = syntheticFeed("hash", "same");
+        feed.get(0).setTitle("changed");
+        updated = chan.getUpdatedItems();
+        novinar.insertOrUpdateItems(chan, feed);
+        assertTrue(chan.getUpdatedItems() - updated >= 1);
+        assertEquals(1, countItems(chan, "hash", "changed"));
+        assertEquals(FEED_SIZE - 1, countItems(chan, "hash", "same"));
+    }
+
+    @Test
+    void guidIdentity()
+        throws Exception
+    {
+        Channel chan = novinar.getChannels().get(0);
+        List<NewsItem> feed = syntheticFeed("guid", "first");
+        for (int i = 0; i < feed.size(); i++) {
+            feed.get(i).setGuid("tag:example.com,2018:guid-" + i);
+        }
+        novinar.insertOrUpdateItems(chan, feed);
+
+        // the feed changes its links, the GUIDs stay the same
+        feed = syntheticFeed("guid", "second");
+        for (int i = 0; i < feed.size(); i++) {
+            NewsItem item = feed.get(i);
+            item.setGuid("tag:example.com,2018:guid-" + i);
+            item.setLink(item.getLink() + "?utm_source=feed");
+        }
+        novinar.insertOrUpdateItems(chan, feed);
+        assertEquals(0, countItems(chan, "guid", "first"));
+        assertEquals(FEED_SIZE, countItems(chan, "guid", "second"));
+
+        // the same links in another channel are other items
+        Channel other = novinar.getChannels().get(1);
+        novinar.insertOrUpdateItems(other, syntheticFeed("guid", "third"));
+        assertEquals(FEED_SIZE, countItems(chan, "guid", "second"));
+        assertEquals(FEED_SIZE, countItems(other, "guid", "third"));
+    }
+
+    @Test
+    void changedLinkKnown()
+        throws Exception
+    {
+        Channel chan = novinar.getChannels().get(0);
+        NewsItem item = syntheticFeed("moved", "first").get(0);
+        item.setGuid("tag:example.com,2018:moved");
+        novinar.insertOrUpdateItem(chan, item);
+
+        // the item moves to another link
+        item = syntheticFeed("moved", "second").get(0);
+        item.setGuid("tag:example.com,2018:moved");
+        item.setLink("http://example.com/moved/elsewhere");
+        novinar.insertOrUpdateItem(chan, item);
+
+        // the feed drops the GUIDs, the new link still finds the item
+        item = syntheticFeed("moved", "third").get(0);
+        item.setLink("http://example.com/moved/elsewhere");
+        novinar.insertOrUpdateItem(chan, item);
+        assertEquals(1, countItems(chan, "moved", ""));
+        assertEquals(1, countItems(chan, "moved", "third"));
+    }
+
+    @Test
+    void canonicalLinks()
+        throws Exception
+    {
+        Channel chan = novinar.getChannels().get(0);
+        novinar.insertOrUpdateItems(chan, syntheticFeed("canonical", "first"));
+
+        // the same items come back over https with tracking parameters
+        List<NewsItem> feed = syntheticFeed("canonical", "second");
+        for (NewsItem item : feed) {
+            item.setLink(item.getLink().replace("http:", "https:") + "?utm_source=feed#top");
+        }
+        novinar.insertOrUpdateItems(chan, feed);
+        assertEquals(0, countItems(chan, "canonical", "first"));
+        assertEquals(FEED_SIZE, countItems(chan, "canonical", "second"));
+        // the original links are kept for display
+        for (NewsItem item : novinar.getNewsItemsFor(chan)) {
+            if (item.getTitle() != null && item.getTitle().startsWith("second")) {
+                assertTrue(item.getLink().endsWith("?utm_source=feed#top"));
+            }
+        }
+    }
+
+    @Test
+    void knownKeys()
+        throws Exception
+    {
+        Channel chan = novinar.getChannels().get(0);
+        List<NewsItem> feed = syntheticFeed("known", "first");
+        novinar.insertOrUpdateItems(chan, feed.subList(0, FEED_SIZE / 2));
+
+        // half of the items are known, half are new
+        long unchanged = chan.getUnchangedItems();
+        novinar.insertOrUpdateItems(chan, feed);
+        assertTrue(chan.getUnchangedItems() - unchanged >= FEED_SIZE / 2);
+        assertEquals(FEED_SIZE, countItems(chan, "known", "first"));
+        // with the items of the test feed the filter might fill up,
+        // then the next store builds it again
+        novinar.insertOrUpdateItems(chan, feed);
+        assertTrue(novinar.getKnownKeyCount(chan) >= FEED_SIZE);
+        assertTrue(novinar.getKnownKeyBytes(chan) > 0);
+        assertTrue(novinar.getKnownKeyBytes() >= novinar.getKnownKeyBytes(chan));
+    }
+
+    @Test
+    void pagedItems()
+        throws Exception
+    {
+        Channel chan = novinar.getChannels().get(0);
+        List<NewsItem> feed = syntheticFeed("paged", "first");
+        // items published at the same time are told apart by their IDs
+        for (int i = 0; i < 10; i++) {
+            feed.get(i).setDateCalendar(feed.get(0).getDateCalendar());
+        }
+        novinar.insertOrUpdateItems(chan, feed);
+
+        Set<Integer> ids = new HashSet<>();
+        int paged = 0;
+        NewsItem last = null;
+        while (true) {
+            List<NewsItem> page = novinar.getNewsItemPageFor(novinar.getRootOutline(), last);
+            assertTrue(page.size() <= novinar.getPageSize());
+            for (NewsItem item : page) {
+                // newest first, every item exactly once
+                if (last != null) {
+                    int cmp = item.getDateCalendar().compareTo(last.getDateCalendar());
+                    assertTrue(cmp < 0 || (cmp == 0 && item.getNewsItemId() < last.getNewsItemId()));
+                }
+                assertTrue(ids.add(item.getNewsItemId()));
+                if (item.getLink().startsWith("http://example.com/paged/")) {
+                    paged++;
+                }
+                last = item;
+            }
+            if (page.size() < novinar.getPageSize()) {
+                break;
+            }
+        }
+        assertEquals(FEED_SIZE, paged);
+        assertTrue(novinar.countNewsItemsFor(novinar.getRootOutline()) >= FEED_SIZE);
+    }
+
+    @Test
+    void statementCache()
+        throws Exception
+    {
+        novinar.getTotalNewsItemsCount();
+        long hits = novinar.getStatementCacheHits();
+        for (int i = 0; i < 10; i++) {
+            novinar.getTotalNewsItemsCount();
+        }
+        // the feed reader thread might be using the database as well
+        assertTrue(novinar.getStatementCacheHits() >= hits + 10);
+    }
+
+    @Test
+    void statementCacheAcrossThreads()
+        throws Exception
+    {
+        Channel chan = novinar.getChannels().get(0);
+        storeInNewThread(chan, syntheticFeed("threads", "first"));
+
+        long hits = novinar.getStatementCacheHits();
+        long misses = novinar.getStatementCacheMisses();
+        for (int i = 0; i < 5; i++) {
+            // like the executors that run every task in a new thread
+            storeInNewThread(chan, syntheticFeed("threads", "round " + i));
+        }
+        long newHits = novinar.getStatementCacheHits() - hits;
+        long newMisses = novinar.getStatementCacheMisses() - misses;
+        double hitRate = (double) newHits / (newHits + newMisses);
+        assertTrue(hitRate >= 0.9, "statement cache hit rate " + hitRate);
+    }
+
+    void storeInNewThread(Channel chan, List<NewsItem> feed)
+        throws Exception
+    {
+        ExecutorService thread = Executors.newSingleThreadExecutor();
+        try {
+            thread.submit(() -> {
+                    novinar.insertOrUpdateItems(chan, feed);
+                    return null;
+                }).get();
+        } finally {
+            thread.shutdown();
+        }
+    }
+
+    @Test
+    void parallelIngestAndReads()
+        throws Exception
+    {
+        Channel chan = novinar.getChannels().get(0);
+        ExecutorService ingest = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> first = ingest.submit(() -> {
+                    novinar.insertOrUpdateItems(chan, syntheticFeed("parallel", "first"));
+                    return null;
+                });
+            // the same links from another thread at the same time
+            Future<?> second = ingest.submit(() -> {
+                    novinar.insertOrUpdateItems(chan, syntheticFeed("parallel", "first"));
+                    return null;
+                });
+            while (!(first.isDone() && second.isDone())) {
+                novinar.getNewsItemsFor(chan);
+            }
+            first.get();
+            second.get();
+        } finally {
+            ingest.shutdown();
+        }
+        assertEquals(FEED_SIZE, countItems(chan, "parallel", "first"));
+    }
+}
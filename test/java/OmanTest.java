@@ -11,9 +11,9 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
-import org.bb.vityok.novinar.Channel;
-import org.bb.vityok.novinar.Novinar;
-import org.bb.vityok.novinar.Outline;
+import org.bb.vityok.novinar.core.Channel;
+import org.bb.vityok.novinar.core.Novinar;
+import org.bb.vityok.novinar.core.Outline;
 
 @DisplayName("Test the OPML manager")
 class OmanTest
@@ -57,6 +57,32 @@ class OmanTest
     }
 
 
+    @Test
+    void feedFormatPersistence() {
+        // configure() has loaded the feeds, a channel read from the
+        // same outline knows the detected format without sniffing
+        Outline ol = findChannelOutline(novinar.getRootOutline());
+        Channel chan = ol.getChannel();
+        assertNotNull(chan.getFeedFormat());
+        assertEquals(chan.getFeedFormat(), new Channel(ol).getFeedFormat());
+
+        chan.setFeedFormat(null);
+        assertNull(new Channel(ol).getFeedFormat());
+    }
+
+    static Outline findChannelOutline(Outline ol) {
+        if (ol.isChannel()) {
+            return ol;
+        }
+        for (Outline child : ol.getChildren()) {
+            Outline found = findChannelOutline(child);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
     @Test
     void outlinePropertyHandling()
         throws Exception
@@ -0,0 +1,149 @@
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import org.bb.vityok.novinar.core.Channel;
+import org.bb.vityok.novinar.core.OPMLManager;
+
+import org.bb.vityok.novinar.feed.RefreshHints;
+
+// To run only this test:
+//
+// ./gradlew test --tests *RefreshHintsTest
+
+@DisplayName("Test the publisher refresh hints")
+class RefreshHintsTest
+{
+    public static final String OPML_FILE_NAME = "test/resources/opml-file.opml";
+    public static final List<String> NONE = Collections.emptyList();
+
+    Channel chan;
+
+    @BeforeEach
+    void setup() {
+        chan = new OPMLManager(OPML_FILE_NAME).getChannels().get(0);
+    }
+
+    @Test
+    void cacheControl() {
+        assertEquals(Duration.ofSeconds(600),
+                     RefreshHints.cacheLifetime("public, max-age=600", null, null));
+        // max-age wins over Expires
+        assertEquals(Duration.ofSeconds(600),
+                     RefreshHints.cacheLifetime("max-age=600", "Fri, 25 May 2018 12:00:00 GMT",
+                                                "Fri, 25 May 2018 10:00:00 GMT"));
+        assertNull(RefreshHints.cacheLifetime("max-age=0", null, null));
+        assertNull(RefreshHints.cacheLifetime("max-age=soon", null, null));
+    }
+
+    @Test
+    void noStoreNoCache() {
+        assertNull(RefreshHints.cacheLifetime("no-store", null, null));
+        assertNull(RefreshHints.cacheLifetime("no-cache", "Fri, 25 May 2018 12:00:00 GMT",
+                                              "Fri, 25 May 2018 10:00:00 GMT"));
+        // wherever they are in the list
+        assertNull(RefreshHints.cacheLifetime("max-age=600, no-store", null, null));
+        assertNull(RefreshHints.cacheLifetime("max-age=600, No-Cache", null, null));
+    }
+
+    @Test
+    void expiresAndDate() {
+        assertEquals(Duration.ofHours(2),
+                     RefreshHints.cacheLifetime(null, "Fri, 25 May 2018 12:00:00 GMT",
+                                                "Fri, 25 May 2018 10:00:00 GMT"));
+        assertEquals(Duration.ofHours(2),
+                     RefreshHints.cacheLifetime("public", "Fri, 25 May 2018 12:00:00 GMT",
+                                                "Fri, 25 May 2018 10:00:00 GMT"));
+        // already expired
+        assertNull(RefreshHints.cacheLifetime(null, "Fri, 25 May 2018 09:00:00 GMT",
+                                              "Fri, 25 May 2018 10:00:00 GMT"));
+        assertNull(RefreshHints.cacheLifetime(null, "0", null));
+        assertNull(RefreshHints.cacheLifetime(null, null, null));
+    }
+
+    @Test
+    void syndicationPeriod() {
+        RefreshHints.apply(chan, null, "hourly", "2", NONE, NONE);
+        assertEquals(Duration.ofMinutes(30), chan.getPublisherInterval());
+        RefreshHints.apply(chan, null, "daily", null, NONE, NONE);
+        assertEquals(Duration.ofDays(1), chan.getPublisherInterval());
+        RefreshHints.apply(chan, null, "weekly", "7", NONE, NONE);
+        assertEquals(Duration.ofDays(1), chan.getPublisherInterval());
+        // invalid frequencies count as 1
+        RefreshHints.apply(chan, null, "daily", "0", NONE, NONE);
+        assertEquals(Duration.ofDays(1), chan.getPublisherInterval());
+        RefreshHints.apply(chan, null, "daily", "often", NONE, NONE);
+        assertEquals(Duration.ofDays(1), chan.getPublisherInterval());
+        RefreshHints.apply(chan, null, "sometimes", "2", NONE, NONE);
+        assertNull(chan.getPublisherInterval());
+        // the longer of ttl and the syndication period
+        RefreshHints.apply(chan, "90", "hourly", "1", NONE, NONE);
+        assertEquals(Duration.ofMinutes(90), chan.getPublisherInterval());
+        RefreshHints.apply(chan, "20", "hourly", "1", NONE, NONE);
+        assertEquals(Duration.ofHours(1), chan.getPublisherInterval());
+    }
+
+    @Test
+    void effectiveInterval() {
+        RefreshHints.apply(chan, "240", null, null, NONE, NONE);
+        assertEquals(Duration.ofHours(4), RefreshHints.effectiveInterval(chan, Duration.ofHours(1)));
+        // hints never shorten the user's interval
+        assertEquals(Duration.ofHours(12), RefreshHints.effectiveInterval(chan, Duration.ofHours(12)));
+        RefreshHints.apply(chan, null, "yearly", null, NONE, NONE);
+        assertEquals(RefreshHints.MAX_HINT, RefreshHints.effectiveInterval(chan, Duration.ofHours(1)));
+    }
+
+    @Test
+    void skipHours() {
+        // 1-24 is read as 0-23
+        RefreshHints.apply(chan, null, null, null, Arrays.asList("22", "23", "24", "x"), NONE);
+        assertEquals(3, chan.getSkipHours().size());
+        // Friday 22:30 moves to 01:00 on Saturday
+        assertEquals(Instant.parse("2018-05-26T01:00:00Z"),
+                     RefreshHints.skipBlockedTime(chan, Instant.parse("2018-05-25T22:30:00Z")));
+        Instant free = Instant.parse("2018-05-25T12:34:56Z");
+        assertEquals(free, RefreshHints.skipBlockedTime(chan, free));
+    }
+
+    @Test
+    void skipDays() {
+        RefreshHints.apply(chan, null, null, null, Arrays.asList("0"),
+                           Arrays.asList("Saturday", " sunday ", "Caturday"));
+        assertEquals(EnumSet.of(DayOfWeek.SATURDAY, DayOfWeek.SUNDAY), chan.getSkipDays());
+        // Saturday morning moves past the weekend and Monday 00:00
+        assertEquals(Instant.parse("2018-05-28T01:00:00Z"),
+                     RefreshHints.skipBlockedTime(chan, Instant.parse("2018-05-26T10:15:00Z")));
+        Instant friday = Instant.parse("2018-05-25T23:30:00Z");
+        assertEquals(friday, RefreshHints.skipBlockedTime(chan, friday));
+    }
+
+    @Test
+    void everythingSkipped() {
+        List<String> hours = Arrays.asList("0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11",
+                                           "12", "13", "14", "15", "16", "17", "18", "19", "20", "21",
+                                           "22", "23");
+        RefreshHints.apply(chan, null, null, null, hours, NONE);
+        Instant due = Instant.parse("2018-05-25T10:00:00Z");
+        assertTimeoutPreemptively(Duration.ofSeconds(5),
+                                  () -> assertEquals(due, RefreshHints.skipBlockedTime(chan, due)));
+
+        RefreshHints.apply(chan, null, null, null, NONE,
+                           Arrays.asList("Monday", "Tuesday", "Wednesday", "Thursday", "Friday",
+                                         "Saturday", "Sunday"));
+        assertTimeoutPreemptively(Duration.ofSeconds(5),
+                                  () -> assertEquals(due, RefreshHints.skipBlockedTime(chan, due)));
+    }
+}
@@ -0,0 +1,133 @@
+import java.time.Duration;
+import java.time.Instant;
+
+import java.util.List;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bb.vityok.novinar.core.Channel;
+import org.bb.vityok.novinar.core.OPMLManager;
+
+import org.bb.vityok.novinar.feed.RefreshScheduler;
+
+// To run only this test:
+//
+// ./gradlew test --tests *RefreshSchedulerTest
+
+@DisplayName("Test the refresh queue")
+class RefreshSchedulerTest
+{
+    public static final String OPML_FILE_NAME = "test/resources/opml-file.opml";
+    /** How long to wait for a channel that must not come. */
+    public static final long QUIET_MILLIS = 300;
+
+    RefreshScheduler scheduler = new RefreshScheduler();
+    ExecutorService reader = Executors.newSingleThreadExecutor();
+    List<Channel> channels;
+    Instant past = Instant.now().minus(Duration.ofMinutes(1));
+
+    @BeforeEach
+    void setup() {
+        channels = new OPMLManager(OPML_FILE_NAME).getChannels();
+    }
+
+    @AfterEach
+    void close() {
+        reader.shutdownNow();
+    }
+
+    /** Assert that take() doesn't return anything for a while. */
+    void assertNothingDue()
+        throws Exception
+    {
+        Future<Channel> next = reader.submit(scheduler::take);
+        assertThrows(TimeoutException.class, () -> next.get(QUIET_MILLIS, TimeUnit.MILLISECONDS));
+        next.cancel(true);
+    }
+
+    @Test
+    void neverQueuedTwice()
+        throws Exception
+    {
+        Channel chan = channels.get(0);
+        scheduler.schedule(chan, past);
+        scheduler.schedule(chan, past.plusSeconds(1));
+        scheduler.reschedule(chan);
+        scheduler.schedule(chan, past);
+        assertEquals(1, scheduler.size());
+
+        assertSame(chan, scheduler.take());
+        assertEquals(0, scheduler.size());
+        // the replaced entries are skipped
+        assertNothingDue();
+    }
+
+    @Test
+    void replacedByLaterTime()
+        throws Exception
+    {
+        Channel chan = channels.get(0);
+        scheduler.schedule(chan, past);
+        scheduler.schedule(chan, Instant.now().plus(Duration.ofHours(1)));
+        assertEquals(1, scheduler.size());
+        assertNothingDue();
+    }
+
+    @Test
+    void removedNotFetched()
+        throws Exception
+    {
+        Channel removed = channels.get(0);
+        Channel kept = channels.get(1);
+        scheduler.schedule(removed, past);
+        scheduler.schedule(kept, past.plusSeconds(1));
+        scheduler.unschedule(removed);
+        assertEquals(1, scheduler.size());
+
+        assertSame(kept, scheduler.take());
+        assertNothingDue();
+    }
+
+    @Test
+    void scheduleAllReplaces()
+        throws Exception
+    {
+        Channel chan = channels.get(0);
+        scheduler.schedule(chan, past);
+        // nothing is due on boot if every channel was updated just now
+        for (Channel c : channels) {
+            c.touch();
+        }
+        scheduler.scheduleAll(channels, false);
+        assertEquals(channels.size(), scheduler.size());
+        assertNothingDue();
+    }
+
+    @Test
+    void stopping()
+        throws Exception
+    {
+        Future<Channel> next = reader.submit(scheduler::take);
+        assertThrows(TimeoutException.class, () -> next.get(QUIET_MILLIS, TimeUnit.MILLISECONDS));
+        // the reader thread is stopped by interrupting it
+        reader.shutdownNow();
+        assertTrue(reader.awaitTermination(5, TimeUnit.SECONDS));
+        ExecutionException ee = assertThrows(ExecutionException.class, next::get);
+        assertTrue(ee.getCause() instanceof InterruptedException);
+    }
+}
@@ -9,7 +9,7 @@ import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
-import org.bb.vityok.novinar.Novinar;
+import org.bb.vityok.novinar.core.Novinar;
 
 @DisplayName("Smoke Test: check if everything works")
 class SmokeTest
@@ -0,0 +1,156 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import java.time.Instant;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+import org.bb.vityok.novinar.core.Channel;
+import org.bb.vityok.novinar.core.NewsItem;
+import org.bb.vityok.novinar.core.Novinar;
+import org.bb.vityok.novinar.core.XMLParsers;
+
+import org.bb.vityok.novinar.feed.Atom;
+import org.bb.vityok.novinar.feed.FeedParser;
+import org.bb.vityok.novinar.feed.ItemWatermark;
+import org.bb.vityok.novinar.feed.RDF;
+import org.bb.vityok.novinar.feed.RSS;
+import org.bb.vityok.novinar.feed.StreamingFeedParser;
+
+// To run only this test:
+//
+// ./gradlew test --tests *StreamingFeedParserTest
+
+@DisplayName("Test the streaming feed parser against the DOM parsers")
+class StreamingFeedParserTest
+{
+    public static final String OPML_FILE_NAME = "test/resources/opml-file.opml";
+    public static final String DB_NAME = "testDB";
+    public static final String[] FEEDS = {
+        "test/resources/slashdot-rdf.xml",
+        "test/resources/ump-rss.xml",
+        "test/resources/tarasenko-atom.xml"
+    };
+
+    /** Keeps the parsed items in memory instead of the database. */
+    static class CollectingNovinar
+        extends Novinar
+    {
+        List<NewsItem> items = new ArrayList<>();
+
+        CollectingNovinar() { super(OPML_FILE_NAME, DB_NAME); }
+
+        @Override
+        public void insertOrUpdateItems(Channel chan, List<NewsItem> newsItems) { items.addAll(newsItems); }
+
+        @Override
+        public void cleanupChannel(Channel chan, Instant ts) {}
+    }
+
+    CollectingNovinar novinar;
+    Channel chan;
+
+    @BeforeEach
+    void setup() {
+        novinar = new CollectingNovinar();
+        chan = novinar.getChannels().get(0);
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        novinar.close();
+    }
+
+    List<NewsItem> parseDom(byte[] body)
+        throws Exception
+    {
+        novinar.items = new ArrayList<>();
+        Document doc = XMLParsers.parse(new InputSource(new ByteArrayInputStream(body)));
+        doc.getDocumentElement().normalize();
+        FeedParser[] parsers = { new RDF(novinar), new RSS(novinar), new Atom(novinar) };
+        for (FeedParser parser : parsers) {
+            if (parser.accepts(doc)) {
+                parser.processFeed(chan, doc);
+            }
+        }
+        return novinar.items;
+    }
+
+    List<NewsItem> parseStreaming(byte[] body)
+        throws Exception
+    {
+        novinar.items = new ArrayList<>();
+        new StreamingFeedParser(novinar).processFeed(chan, new ByteArrayInputStream(body), null);
+        return novinar.items;
+    }
+
+    static byte[] read(String path) throws IOException {
+        return Files.readAllBytes(Paths.get(path));
+    }
+
+    @Test
+    void sameItemsAsDom()
+        throws Exception
+    {
+        for (String feed : FEEDS) {
+            byte[] body = read(feed);
+            List<NewsItem> domItems = parseDom(body);
+            List<NewsItem> streamItems = parseStreaming(body);
+            assertTrue(domItems.size() > 0);
+            assertEquals(domItems.size(), streamItems.size(), feed);
+            for (int i = 0; i < domItems.size(); i++) {
+                NewsItem expected = domItems.get(i);
+                NewsItem actual = streamItems.get(i);
+                assertEquals(expected.getTitle(), actual.getTitle(), feed);
+                assertEquals(expected.getLink(), actual.getLink(), feed);
+                assertEquals(expected.getDescription(), actual.getDescription(), feed);
+                assertEquals(expected.getCreator(), actual.getCreator(), feed);
+                assertEquals(expected.getDateCalendar(), actual.getDateCalendar(), feed);
+            }
+        }
+    }
+
+    @Test
+    void watermarkSkipsKnownItems()
+        throws Exception
+    {
+        for (String feed : FEEDS) {
+            byte[] body = read(feed);
+            chan.setWatermark(null, null);
+
+            novinar.items = new ArrayList<>();
+            ItemWatermark first = new ItemWatermark(chan, true);
+            new StreamingFeedParser(novinar).processFeed(chan, new ByteArrayInputStream(body), null, first);
+            int all = novinar.items.size();
+            assertEquals(0, first.getKnownCount(), feed);
+            first.commit(chan);
+
+            novinar.items = new ArrayList<>();
+            ItemWatermark second = new ItemWatermark(chan, true);
+            new StreamingFeedParser(novinar).processFeed(chan, new ByteArrayInputStream(body), null, second);
+            assertTrue(second.getKnownCount() > 0, feed);
+            assertEquals(all, second.getKnownCount() + novinar.items.size(), feed);
+
+            // full resync stores everything again
+            novinar.items = new ArrayList<>();
+            new StreamingFeedParser(novinar).processFeed(chan, new ByteArrayInputStream(body), null,
+                                                         new ItemWatermark(chan, false));
+            assertEquals(all, novinar.items.size(), feed);
+        }
+    }
+}
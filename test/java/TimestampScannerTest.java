@@ -0,0 +1,79 @@
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.bb.vityok.novinar.core.Channel;
+import org.bb.vityok.novinar.core.OPMLManager;
+
+import org.bb.vityok.novinar.feed.FeedParser;
+import org.bb.vityok.novinar.feed.TimestampScanner;
+
+// To run only this test:
+//
+// ./gradlew test --tests *TimestampScannerTest
+
+@DisplayName("Test the timestamp scanners")
+class TimestampScannerTest
+{
+    public static final String OPML_FILE_NAME = "test/resources/opml-file.opml";
+
+    @Test
+    void scanRfc822() {
+        assertEquals(Instant.parse("2018-05-25T17:20:32Z"),
+                     TimestampScanner.scanRfc822("Fri, 25 May 2018 10:20:32 PDT"));
+        assertEquals(Instant.parse("2017-11-28T08:00:00Z"),
+                     TimestampScanner.scanRfc822("Tue, 28 Nov 2017 03:00 EST"));
+        assertEquals(Instant.parse("2018-07-03T06:14:20Z"),
+                     TimestampScanner.scanRfc822("Tue, 03 Jul 2018 8:14:20 CEST"));
+        assertEquals(Instant.parse("2018-10-29T13:58:00Z"),
+                     TimestampScanner.scanRfc822("29 Oct 18 15:58:00 +0200"));
+        assertNull(TimestampScanner.scanRfc822("Wed, 09 May 2018 (All day)"));
+        assertNull(TimestampScanner.scanRfc822("Mon, 31 Feb 2018 10:00:00 GMT"));
+        assertNull(TimestampScanner.scanRfc822("2018-07-02 10:52:00"));
+    }
+
+    @Test
+    void scanIso8601() {
+        assertEquals(Instant.parse("2018-04-30T10:00:00.123Z"),
+                     TimestampScanner.scanIso8601("2018-04-30T12:00:00.123+02:00"));
+        assertEquals(Instant.parse("2018-07-02T10:52:00Z"),
+                     TimestampScanner.scanIso8601("2018-07-02 10:52:00"));
+        assertEquals(Instant.parse("2018-04-24T16:07:16Z"),
+                     TimestampScanner.scanIso8601("2018-04-24T16:07:16Z"));
+        assertNull(TimestampScanner.scanIso8601("2018-13-01T00:00:00Z"));
+        assertNull(TimestampScanner.scanIso8601("Fri, 25 May 2018 10:20:32 PDT"));
+    }
+
+    @Test
+    void rememberFormat() {
+        // a bare channel, the feed reader would be parsing timestamps
+        // of the channels of a running Novinar at the same time
+        Channel chan = new OPMLManager(OPML_FILE_NAME).getChannels().get(0);
+        assertEquals(-1, chan.getTimestampFormat());
+        FeedParser.parseTimestamp(chan, "05/30/2018 20:41 PM");
+        int format = chan.getTimestampFormat();
+        FeedParser.parseTimestamp(chan, "06/29/2018 12:57 PM");
+        assertEquals(format, chan.getTimestampFormat());
+        FeedParser.parseTimestamp(chan, "Fri, 25 May 2018 10:20:32 PDT");
+        assertEquals(FeedParser.TS_RFC822, chan.getTimestampFormat());
+    }
+
+    /** Trying TIMESTAMP_FORMATS one by one, the way timestamps were
+     * parsed before the scanners. */
+    static Instant parseWithPatterns(String timestamp) {
+        for (DateTimeFormatter tsFormat : FeedParser.TIMESTAMP_FORMATS) {
+            try {
+                return tsFormat.parse(timestamp, Instant::from);
+            } catch (DateTimeParseException pe) {
+                continue;
+            }
+        }
+        return null;
+    }
+}